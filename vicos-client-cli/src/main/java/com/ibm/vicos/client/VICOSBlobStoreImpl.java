@@ -17,6 +17,7 @@
 package com.ibm.vicos.client;
 
 import com.google.common.base.Strings;
+import com.google.common.hash.HashFunction;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 
@@ -27,6 +28,7 @@ import com.ibm.vicos.common.util.ClientBuilder;
 import com.ibm.vicos.common.util.Utils;
 import com.ibm.vicos.exceptions.IntegrityException;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 
 import org.jclouds.ContextBuilder;
 import org.jclouds.blobstore.BlobStore;
@@ -39,6 +41,7 @@ import java.util.Properties;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.ibm.vicos.common.util.Utils.base64encoding;
+import static com.ibm.vicos.config.ConfigHelper.returnHashFunction;
 import static com.ibm.vicos.common.util.Utils.hashMurmur3_32;
 import static com.ibm.vicos.common.util.Utils.transformBlobName;
 import static org.jclouds.Constants.PROPERTY_RELAX_HOSTNAME;
@@ -48,7 +51,6 @@ import static org.jclouds.Constants.PROPERTY_TRUST_ALL_CERTS;
  * Created by bur on 23/03/16.
  */
 public class VICOSBlobStoreImpl implements VICOSBlobStore {
-    private static final String HASH_ALGORITHM = "SHA-1";
     private static final String INIT_TOKEN = "_init_";
     private static final String NONCE_PREFIX = "-v";
     private static final String IDENTITY_KEY = "identity";
@@ -56,6 +58,7 @@ public class VICOSBlobStoreImpl implements VICOSBlobStore {
     private static final String PROVIDER_KEY = "provider";
     private static final String ENDPOINT_KEY = "endpoint";
     private BlobStoreContext context;
+    private HashFunction hashFunction;
     private boolean isInitialized = false;
     private VICOSClient client;
     private long objCounter = 0;
@@ -84,6 +87,9 @@ public class VICOSBlobStoreImpl implements VICOSBlobStore {
                 .overrides(properties)
                 .buildView(BlobStoreContext.class);
 
+        // objects are hashed like the protocol messages
+        hashFunction = returnHashFunction(config.withFallback(ConfigFactory.load()).resolve().getString("vicos.system.hashing.algorithm"));
+
         // init vicos
         client = ClientBuilder.buildFromConfig(config);
         isInitialized = true;
@@ -99,7 +105,7 @@ public class VICOSBlobStoreImpl implements VICOSBlobStore {
                     transformBlobName(name, hashMurmur3_32(name), metadata.getNonce())
             ).getPayload().openStream();
 
-            return new HashInputStream(in, metadata.getHashValue().toByteArray(), HASH_ALGORITHM);
+            return new HashInputStream(in, metadata.getHashValue().toByteArray(), hashFunction);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
@@ -118,13 +124,7 @@ public class VICOSBlobStoreImpl implements VICOSBlobStore {
 
     @Override
     public void createObject(String container, String name, InputStream data, long length) throws IntegrityException {
-        final HashInputStream hmacInputStream;
-        try {
-            hmacInputStream = new HashInputStream(data, HASH_ALGORITHM);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
+        final HashInputStream hmacInputStream = new HashInputStream(data, hashFunction);
         // pick a nonce and save in blobState
         final String nonce = client.getClientId() + NONCE_PREFIX + objCounter++;
 
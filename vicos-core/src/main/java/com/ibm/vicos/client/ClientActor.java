@@ -16,7 +16,7 @@
 
 package com.ibm.vicos.client;
 
-import com.google.common.collect.Queues;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -25,43 +25,58 @@ import com.ibm.vicos.common.Messages.Message;
 import com.ibm.vicos.common.Operations;
 import com.ibm.vicos.common.Operations.Operation;
 import com.ibm.vicos.common.Operations.Result;
+import com.ibm.vicos.common.crypto.CanonicalEncoding;
 import com.ibm.vicos.exceptions.FlowControlException;
 import com.ibm.vicos.exceptions.IntegrityException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Queue;
+import java.util.Map;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSelection;
 import akka.actor.Status.Failure;
 import akka.actor.UntypedActor;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.ibm.vicos.common.Messages.Message.Type.COMMIT;
 import static com.ibm.vicos.common.Messages.Message.Type.COMMIT_AUTH;
 import static com.ibm.vicos.common.Messages.Message.Type.INIT;
 import static com.ibm.vicos.common.Messages.Message.Type.INVOKE;
+import static com.ibm.vicos.common.Messages.Message.Type.READ;
 import static com.ibm.vicos.common.Operations.Status.SUCCESS;
 
 /**
  * Created by bur on 22/09/15.
+ *
+ * Keeps up to maxInFlight operations invoked at the server at the same time, replies are correlated to the
+ * waiting callers by invocation id. If readFastPath is set, GET and LIST are sent as unsequenced reads.
  */
 public class ClientActor extends UntypedActor {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientActor.class);
     private final ClientProtocol clientProtocol;
-    private State state = State.IDLE;
-    private ActorRef invocationCallback;
+    private final int maxInFlight;
+    private final int shard;
+    private final boolean readFastPath;
+    private final Map<Long, ActorRef> invocationCallbacks = Maps.newHashMap();
+    private final Map<Long, Operation> reads = Maps.newHashMap();
     private ActorSelection remoteServer;
-    private Queue<Operation> uncompletedOperations = Queues.newLinkedBlockingQueue();
 
     @Inject
     public ClientActor(ClientProtocol clientProtocol,
-                       @Named("remoteServerSelection") ActorSelection remoteServer) {
+                       @Named("remoteServerSelection") ActorSelection remoteServer,
+                       @Named("maxInFlight") Integer maxInFlight,
+                       @Named("shard") Integer shard,
+                       @Named("readFastPath") Boolean readFastPath) {
         this.clientProtocol = checkNotNull(clientProtocol, "clientProtocol");
         this.remoteServer = checkNotNull(remoteServer, "remoteServer");
+        checkArgument(checkNotNull(maxInFlight, "maxInFlight") > 0, "maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+        this.shard = checkNotNull(shard, "shard");
+        this.readFastPath = checkNotNull(readFastPath, "readFastPath");
     }
 
     @Override
@@ -77,11 +92,7 @@ public class ClientActor extends UntypedActor {
     }
 
     public State getState() {
-        return state;
-    }
-
-    public void setState(State state) {
-        this.state = state;
+        return invocationCallbacks.isEmpty() ? State.IDLE : State.ACTIVE;
     }
 
     private void processMessage(final Message message) {
@@ -90,6 +101,10 @@ public class ClientActor extends UntypedActor {
                 processReplyMessage(message.getReply());
                 break;
             }
+            case READ_REPLY: {
+                processReadReplyMessage(message.getReadReply());
+                break;
+            }
             case UPDATE_AUTH: {
                 processUpdateAuthMessage(message.getUpdateAuth());
                 break;
@@ -101,6 +116,11 @@ public class ClientActor extends UntypedActor {
     }
 
     private void processReplyMessage(Messages.Reply message) {
+        if (!invocationCallbacks.containsKey(message.getInvocationId())) {
+            // a recovered server sends the replies of all uncommitted invocations again
+            LOG.debug("Drop reply for invocation {} answered before", message.getInvocationId());
+            return;
+        }
         Result result;
         try {
             Messages.CommitResult output = clientProtocol.handleReply(message);
@@ -116,7 +136,24 @@ public class ClientActor extends UntypedActor {
             result = Result.newBuilder().setResultType(Operations.ResultType.INTEGRITY_VIOLATION).build();
         }
 
-        returnResult(result);
+        returnResult(message.getInvocationId(), result);
+    }
+
+    private void processReadReplyMessage(Messages.ReadReply message) {
+        final Operation operation = checkNotNull(reads.remove(message.getInvocationId()), "read is undefined");
+        Result result;
+        try {
+            result = clientProtocol.handleReadReply(message);
+        } catch (IntegrityException e) {
+            result = Result.newBuilder().setResultType(Operations.ResultType.INTEGRITY_VIOLATION).build();
+        }
+
+        if (result == null) {
+            LOG.debug("Read cannot be answered from the applied state, invoke it");
+            invoke(operation, invocationCallbacks.remove(message.getInvocationId()));
+            return;
+        }
+        returnResult(message.getInvocationId(), result);
     }
 
     private void processUpdateAuthMessage(Messages.UpdateAuth message) {
@@ -126,43 +163,55 @@ public class ClientActor extends UntypedActor {
                 .setSource(clientProtocol.getClientId())
                 .build();
         sendToServer(msg);
-        uncompletedOperations.poll();
     }
 
     private void processOperation(final Operation operation) {
-        registerInvocationCallback();
         final Message.Builder msg = Message.newBuilder().setSource(clientProtocol.getClientId());
         switch (operation.getOpCode()) {
             case INIT: {
                 sendToServer(msg.setType(INIT)
                         .setInit(clientProtocol.invokeInit())
                         .build());
-                returnResult(Result.newBuilder().setStatus(SUCCESS).build());
-                unregisterInvocationCallback();
+                getSender().tell(Result.newBuilder().setStatus(SUCCESS).build(), getSelf());
+                break;
+            }
+            case GET:
+            case LIST: {
+                if (readFastPath) {
+                    Messages.Read read = clientProtocol.invokeRead(operation);
+                    invocationCallbacks.put(read.getInvocationId(), getSender());
+                    reads.put(read.getInvocationId(), operation);
+                    sendToServer(msg.setType(READ)
+                            .setRead(read)
+                            .build());
+                    break;
+                }
+                invoke(operation, getSender());
                 break;
             }
             default: {
-                uncompletedOperations.add(operation);
-                sendToServer(msg.setType(INVOKE)
-                        .setInvoke(clientProtocol.invokeOperation(operation))
-                        .build());
+                invoke(operation, getSender());
                 break;
             }
         }
 
     }
 
-    private ActorRef registerInvocationCallback() {
-        setState(State.ACTIVE);
-        invocationCallback = sender();
-        return invocationCallback;
+    private void invoke(final Operation operation, final ActorRef callback) {
+        Messages.Invoke invoke = clientProtocol.invokeOperation(operation);
+        invocationCallbacks.put(invoke.getInvocationId(), callback);
+        sendToServer(Message.newBuilder()
+                .setSource(clientProtocol.getClientId())
+                .setType(INVOKE)
+                .setInvoke(invoke)
+                .build());
     }
 
-    private ActorRef unregisterInvocationCallback() {
-        setState(State.IDLE);
-        ActorRef ref = invocationCallback;
-        invocationCallback = null;
-        return ref;
+    private boolean acceptsOperation(final Operation operation) {
+        if (operation.getOpCode() == Operations.OpCode.INIT) {
+            return getState() == State.IDLE;
+        }
+        return invocationCallbacks.size() < maxInFlight;
     }
 
     @Override
@@ -170,11 +219,16 @@ public class ClientActor extends UntypedActor {
         if (message instanceof Message) {
             processMessage((Message) message);
         } else if (message instanceof Operation) {
-            if (getState() == State.IDLE) {
-                processOperation((Operation) message);
+            if (acceptsOperation((Operation) message)) {
+                try {
+                    processOperation((Operation) message);
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Operation rejected: {}", e.getMessage());
+                    getSender().tell(new Failure(e), getSelf());
+                }
             } else {
-                LOG.warn("There is currently another operation being processed.");
-                getSender().tell(new Failure(new FlowControlException("There is currently another operation being processed.")), getSelf());
+                LOG.warn("There are currently {} operations being processed.", invocationCallbacks.size());
+                getSender().tell(new Failure(new FlowControlException("There are currently too many operations being processed.")), getSelf());
             }
         } else {
             unhandled(message);
@@ -189,18 +243,21 @@ public class ClientActor extends UntypedActor {
     }
 
     /**
-     * Sends message to server
+     * Sends message to the server shard of this actor
      */
     private void sendToServer(Message message) {
-        remoteServer.tell(message, getSelf());
+        remoteServer.tell(message.toBuilder()
+                .setShard(shard)
+                .setVersion(CanonicalEncoding.VERSION)
+                .build(), getSelf());
     }
 
     /**
      * Returns operation result to application
      */
-    private void returnResult(Result result) {
+    private void returnResult(long invocationId, Result result) {
         checkNotNull(result, "result must not be null");
-        ActorRef ref = checkNotNull(unregisterInvocationCallback(), "callback is undefined");
+        ActorRef ref = checkNotNull(invocationCallbacks.remove(invocationId), "callback is undefined");
         ref.tell(result, getSelf());
     }
 
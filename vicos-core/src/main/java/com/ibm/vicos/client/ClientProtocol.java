@@ -20,9 +20,12 @@ import com.ibm.vicos.common.Messages.CommitAuth;
 import com.ibm.vicos.common.Messages.CommitResult;
 import com.ibm.vicos.common.Messages.Init;
 import com.ibm.vicos.common.Messages.Invoke;
+import com.ibm.vicos.common.Messages.Read;
+import com.ibm.vicos.common.Messages.ReadReply;
 import com.ibm.vicos.common.Messages.Reply;
 import com.ibm.vicos.common.Messages.UpdateAuth;
 import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Result;
 import com.ibm.vicos.exceptions.IntegrityException;
 
 /**
@@ -34,6 +37,16 @@ public interface ClientProtocol {
 
     CommitResult handleReply(final Reply message) throws IntegrityException;
 
+    /**
+     * Invokes a read-only operation without sequencing it at the server
+     */
+    Read invokeRead(Operation operation);
+
+    /**
+     * @return the verified result, or null if the read has to be invoked as regular operation
+     */
+    Result handleReadReply(final ReadReply message) throws IntegrityException;
+
     CommitAuth handleUpdateAuth(final UpdateAuth message) throws IntegrityException;
 
     Init invokeInit();
@@ -16,7 +16,10 @@
 
 package com.ibm.vicos.client;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.google.protobuf.TextFormat;
@@ -30,12 +33,15 @@ import com.ibm.vicos.common.Messages.CommitAuth;
 import com.ibm.vicos.common.Messages.CommitResult;
 import com.ibm.vicos.common.Messages.Init;
 import com.ibm.vicos.common.Messages.Invoke;
+import com.ibm.vicos.common.Messages.Read;
+import com.ibm.vicos.common.Messages.ReadReply;
 import com.ibm.vicos.common.Messages.Reply;
 import com.ibm.vicos.common.Messages.UpdateAuth;
 import com.ibm.vicos.common.OperationProcessor;
 import com.ibm.vicos.common.Operations.Operation;
 import com.ibm.vicos.common.Operations.Result;
 import com.ibm.vicos.common.Operations.Status;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.exceptions.IntegrityException;
 
@@ -43,9 +49,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.NavigableMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -62,23 +73,39 @@ import static java.lang.Long.max;
 public class ClientProtocolImpl implements ClientProtocol {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientProtocolImpl.class);
-    private final NavigableMap<Long, String> hashChain; // H
-    private final NavigableMap<Long, Status> status; // Z
+    // operations are seen repeatedly while pending, in later deltas and in UpdateAuth
+    private static final int VERIFIED_SIGNATURES_CACHE_SIZE = 4096;
+    private final SequenceBuffer<String> hashChain; // H
+    private final SequenceBuffer<Status> status; // Z
     private final AtomicLong lastSequenceNumber;
     private final ClientIdentifier clientIdentifier;
     private final CryptoUtils cryptoUtils;
     private final OperationProcessor operationProcessor;
     private final ClientLookupMap clientLookupMap;
-    private Operation currentOperation; // u
+    private final ForkJoinPool verificationPool;
+    private final int parallelVerificationThreshold;
+    private final Map<Long, Operation> invocations = Maps.newHashMap(); // u, invoked operations awaiting a reply
+    private final Map<Long, Long> invocationStarts = Maps.newHashMap(); // last sequence number sent per invocation
+    private final Map<Long, Operation> reads = Maps.newHashMap(); // read-only operations awaiting a reply
+    private final Cache<List<Object>, Boolean> verifiedSignatures = CacheBuilder.newBuilder()
+            .maximumSize(VERIFIED_SIGNATURES_CACHE_SIZE)
+            .build();
+    private final Cache<String, Operation> verifiedOperations = CacheBuilder.newBuilder()
+            .maximumSize(VERIFIED_SIGNATURES_CACHE_SIZE)
+            .build();
+    private long lastInvocationId;
+    private long lastOwnSequenceNumber; // highest sequence number assigned to an operation of this client
 
     @Inject
-    public ClientProtocolImpl(@Named("hashChainMap") NavigableMap<Long, String> hashChain,
-                              @Named("statusMap") NavigableMap<Long, Status> status,
+    public ClientProtocolImpl(@Named("hashChainMap") SequenceBuffer<String> hashChain,
+                              @Named("statusMap") SequenceBuffer<Status> status,
                               @Named("lastSequenceNumber") AtomicLong lastSequenceNumber,
                               @Named("clientLookupMap") ClientLookupMap clientLookupMap,
                               @Named("clientIdentifier") ClientIdentifier clientIdentifier,
                               CryptoUtils cryptoUtils,
-                              OperationProcessor operationProcessor) {
+                              OperationProcessor operationProcessor,
+                              @Named("verificationPool") ForkJoinPool verificationPool,
+                              @Named("parallelVerificationThreshold") Integer parallelVerificationThreshold) {
         this.hashChain = checkNotNull(hashChain, "hashChain");
         this.status = checkNotNull(status, "status");
         this.lastSequenceNumber = checkNotNull(lastSequenceNumber, "lastSequenceNumber");
@@ -86,14 +113,17 @@ public class ClientProtocolImpl implements ClientProtocol {
         this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
         this.operationProcessor = checkNotNull(operationProcessor, "operationProcessor");
         this.clientLookupMap = checkNotNull(clientLookupMap, "clientLookupMa");
+        this.verificationPool = checkNotNull(verificationPool, "verificationPool");
+        this.parallelVerificationThreshold = checkNotNull(parallelVerificationThreshold, "parallelVerificationThreshold");
     }
 
     public Invoke invokeOperation(Operation operation) {
         LOG.debug("Process operation invocation");
         LOG.trace("Operation: {}", operation);
         LOG.trace("Last known sequence number: {}", lastSequenceNumber.get());
+        checkArgument(operationProcessor.isValid(operation), "Invalid operation: %s", operation);
 
-        String uuid = cryptoUtils.generateOperationUUID(operation, getClientId());
+        final String uuid = cryptoUtils.generateOperationUUID(operation, getClientId());
 
         final String signature = cryptoUtils.sign(
                 ImmutableList.of("INVOKE",
@@ -102,16 +132,42 @@ public class ClientProtocolImpl implements ClientProtocol {
                 clientIdentifier
         );
 
-        registerCurrentOperation(Operation.newBuilder()
+        final Operation invokedOperation = Operation.newBuilder()
                 .mergeFrom(operation)
                 .setSignature(signature)
-//                .setUuid(uuid)
+                .setUuid(uuid)
                 .setClientId(clientIdentifier.getClientId())
-                .build());
+                .build();
+        verifiedOperations.put(uuid, contentOf(invokedOperation));
+        final long invocationId = ++lastInvocationId;
+        invocations.put(invocationId, invokedOperation);
+        invocationStarts.put(invocationId, lastSequenceNumber.get());
 
         return Invoke.newBuilder()
-                .setOperation(currentOperation)
+                .setOperation(invokedOperation)
+                .setLastSequenceNumber(lastSequenceNumber.get())
+                .setInvocationId(invocationId)
+                .setVerifiedAuthenticator(operationProcessor.verifiedAuthenticator())
+                .build();
+    }
+
+    public Read invokeRead(Operation operation) {
+        LOG.debug("Process read invocation");
+        LOG.trace("Operation: {}", operation);
+        checkArgument(!operationProcessor.isUpdateOperation(operation), "Not a read-only operation: %s", operation);
+
+        final Operation readOperation = Operation.newBuilder()
+                .mergeFrom(operation)
+                .setClientId(clientIdentifier.getClientId())
+                .build();
+        final long invocationId = ++lastInvocationId;
+        reads.put(invocationId, readOperation);
+
+        return Read.newBuilder()
+                .setOperation(readOperation)
                 .setLastSequenceNumber(lastSequenceNumber.get())
+                .setInvocationId(invocationId)
+                .setVerifiedAuthenticator(operationProcessor.verifiedAuthenticator())
                 .build();
     }
 
@@ -119,8 +175,12 @@ public class ClientProtocolImpl implements ClientProtocol {
         LOG.debug("Process Reply message");
         LOG.trace("message {}", message);
 
+        final Operation invokedOperation = invocations.remove(message.getInvocationId());
+        checkState(invokedOperation != null, "Reply for unknown invocation %s", message.getInvocationId());
+        invocationStarts.remove(message.getInvocationId());
+
         Operation currentOperation = Operation.newBuilder()
-                .mergeFrom(this.currentOperation)
+                .mergeFrom(invokedOperation)
                 .setSequenceNumber(message.getAssignedSequenceNumber())
                 .build();
 
@@ -136,60 +196,36 @@ public class ClientProtocolImpl implements ClientProtocol {
         pendingOperations = new ImmutableList.Builder<Operation>()
                 .addAll(pendingOperations).add(currentOperation).build();
 
+        if (!message.getCheckpointHash().isEmpty()) {
+            resumeFromCheckpoint(deltaOperations, message.getCheckpointHash());
+        }
         checkView(deltaOperations, authenticator);
         checkPendingOperations(pendingOperations);
 
-        // if pending op has already abort status, we can drop that one
-        List<Operation> pendingOthers = pendingOperations.stream()
-                .filter(o -> !o.getClientId().equals(getClientId()))
-                .filter(o -> o.getStatus() == UNKNOWN)
-                .collect(Collectors.toList());
-
-        // isCompatible check
-        Status currentOperationStatus;
-        if (operationProcessor.isCompatible(pendingOthers, currentOperation)) {
-            LOG.debug("[SUCCESS] Operation is compatible!");
-
-            // successful operations by others
-            List<Operation> successOthers = pendingOperations.stream()
-                    .filter(o -> !o.getClientId().equals(getClientId()))
-                    .filter(o -> o.getStatus() != SUCCESS)
-                    .collect(Collectors.toList());
-
-            List<Operation> pendingSelfs = pendingOperations.stream()
-                    .filter(o -> o.getClientId().equals(getClientId()))
-                    .filter(o -> o.getStatus() != ABORT)
-                    .collect(Collectors.toList());
-
-            successOthers.addAll(pendingSelfs);
-
-            if (!operationProcessor.authexec(successOthers, authenticator, result, auxiliaryData).isValid()) {
-                LOG.error("Integrity violation detected!!! Protocol has been stopped!");
-                throw new IntegrityException("Integrity violation detected");
-            }
-            currentOperationStatus = SUCCESS;
-        } else {
-            LOG.debug("[ABORT] Operation is not compatible.");
+        final Status currentOperationStatus;
+        if (!message.getError().isEmpty()) {
+            LOG.warn("Server failed to execute operation {}: {}", currentOperation.getSequenceNumber(), message.getError());
             currentOperationStatus = ABORT;
+        } else {
+            currentOperationStatus = authenticate(message.getPendingOperationsList(), currentOperation,
+                    authenticator, result, auxiliaryData);
         }
         result = Result.newBuilder().mergeFrom(result).setStatus(currentOperationStatus).build();
 
         status.put(currentOperation.getSequenceNumber(), currentOperationStatus);
+        lastOwnSequenceNumber = Math.max(lastOwnSequenceNumber, currentOperation.getSequenceNumber());
 
         // can we return the result already to the client and after that creating the signature?
 
         String signature = cryptoUtils.sign(ImmutableList.of("COMMIT",
-//                        currentOperation.getUuid(),
-                        cryptoUtils.generateOperationUUID(currentOperation, currentOperation.getClientId()),
+                        cryptoUtils.operationUUID(currentOperation),
                         getClientId(),
-                        String.valueOf(currentOperation.getSequenceNumber()),
-                        currentOperationStatus.toString(),
+                        currentOperation.getSequenceNumber(),
+                        currentOperationStatus,
                         hashChain.get(currentOperation.getSequenceNumber())),
                 clientIdentifier
         );
 
-        unregisterCurrentOperation();
-
         return CommitResult.newBuilder()
                 .setCommit(Commit.newBuilder()
                         .setSequenceNumber(currentOperation.getSequenceNumber())
@@ -199,13 +235,59 @@ public class ClientProtocolImpl implements ClientProtocol {
                 .build();
     }
 
-    private void registerCurrentOperation(Operation operation) {
-        checkState(currentOperation == null, "There is still an operation invocation in process");
-        this.currentOperation = checkNotNull(operation);
-    }
+    /**
+     * Verifies the view and the result of a read. The read takes effect at the last operation in the reply, which
+     * becomes part of this client's view, so later replies must extend it. Replies older than the current view and
+     * reads conflicting with pending operations cannot be linearized without a sequence number.
+     *
+     * @return the result, or null if the read must be invoked as regular operation
+     */
+    public Result handleReadReply(final ReadReply message) throws IntegrityException {
+        LOG.debug("Process ReadReply message");
+        LOG.trace("message {}", message);
 
-    private void unregisterCurrentOperation() {
-        this.currentOperation = null;
+        final Operation operation = reads.remove(message.getInvocationId());
+        checkState(operation != null, "Reply for unknown read %s", message.getInvocationId());
+
+        List<Operation> deltaOperations = message.getDeltaOperationsList();
+        checkState(!deltaOperations.isEmpty(), "Empty deltaOperations");
+
+        // the operations up to the last known one have already been verified
+        final long knownSequenceNumber = lastSequenceNumber.get();
+        if (deltaOperations.get(deltaOperations.size() - 1).getSequenceNumber() < knownSequenceNumber) {
+            LOG.debug("Read reply precedes last known operation {}", knownSequenceNumber);
+            return null;
+        }
+        // the read must see all operations of this client with a known sequence number, otherwise the server could
+        // answer from an older view or strip the pending operations
+        final long lastReplySequenceNumber = message.getPendingOperationsCount() > 0
+                ? message.getPendingOperations(message.getPendingOperationsCount() - 1).getSequenceNumber()
+                : deltaOperations.get(deltaOperations.size() - 1).getSequenceNumber();
+        if (lastReplySequenceNumber < lastOwnSequenceNumber) {
+            LOG.debug("Read reply precedes own operation {}", lastOwnSequenceNumber);
+            return null;
+        }
+        deltaOperations = deltaOperations.stream()
+                .filter(o -> o.getSequenceNumber() >= knownSequenceNumber)
+                .collect(Collectors.toList());
+
+        if (!message.getCheckpointHash().isEmpty() && deltaOperations.get(0).getSequenceNumber() - 1 > knownSequenceNumber) {
+            resumeFromCheckpoint(deltaOperations, message.getCheckpointHash());
+        }
+        checkView(deltaOperations, message.getLastAuthenticator());
+        if (message.getPendingOperationsCount() > 0) {
+            checkPendingOperations(message.getPendingOperationsList());
+        }
+        if (!message.getError().isEmpty()) {
+            LOG.warn("Server failed to execute read: {}", message.getError());
+            return null;
+        }
+
+        if (authenticate(message.getPendingOperationsList(), operation, message.getLastAuthenticator(),
+                message.getResult(), message.getAuxiliaryData()) != SUCCESS) {
+            return null;
+        }
+        return Result.newBuilder().mergeFrom(message.getResult()).setStatus(SUCCESS).build();
     }
 
     public CommitAuth handleUpdateAuth(final UpdateAuth message) throws IntegrityException {
@@ -221,35 +303,52 @@ public class ClientProtocolImpl implements ClientProtocol {
 
         checkArgument(operation.getStatus() != UNKNOWN, "Operation has unknown state: %s", operation);
         checkNotNull(hashChain.get(operation.getSequenceNumber()), "Hash chain entry must not be null! %s", operation);
+        checkArgument(hasValidUUID(operation), "Verification failed: UUID does not match operation %s", operation);
 
         // verify operation
         checkArgument(cryptoUtils.verify(operation.getSignature(),
                 ImmutableList.of("COMMIT",
-                        cryptoUtils.generateOperationUUID(operation, operation.getClientId()),
+                        cryptoUtils.operationUUID(operation),
                         operation.getClientId(),
-                        String.valueOf(operation.getSequenceNumber()),
-                        operation.getStatus().toString(),
+                        operation.getSequenceNumber(),
+                        operation.getStatus(),
                         hashChain.get(operation.getSequenceNumber())),
                 clientIdentifier
         ), "Verification failed: Operation seems to be corrupted: %s", operation);
 
+        // verify the committed operations coalesced with ours
+        long expectedSequenceNumber = lastOperation.getSequenceNumber() + 1;
+        for (Operation o : message.getPrecedingOperationsList()) {
+            checkArgument(o.getSequenceNumber() == expectedSequenceNumber++, "Coalesced operations are not consecutive: %s", o);
+            checkArgument(o.getStatus() != UNKNOWN, "Operation has unknown state: %s", o);
+            checkNotNull(hashChain.get(o.getSequenceNumber()), "Hash chain entry must not be null! %s", o);
+            checkArgument(hasValidUUID(o), "Verification failed: UUID does not match operation %s", o);
+            checkArgument(verifyCommit(o, hashChain.get(o.getSequenceNumber())),
+                    "Verification failed: Operation seems to be corrupted: %s", o);
+        }
+        checkArgument(operation.getSequenceNumber() == expectedSequenceNumber, "Coalesced operations are not consecutive: %s", operation);
+
         // verify authenticator
         checkArgument(cryptoUtils.verify(lastAuthenticator.getSignature(),
                 ImmutableList.of("AUTH",
-                        cryptoUtils.generateOperationUUID(lastOperation, lastOperation.getClientId()),
+                        cryptoUtils.operationUUID(lastOperation),
                         lastOperation.getClientId(),
-                        String.valueOf(lastOperation.getSequenceNumber()),
+                        lastOperation.getSequenceNumber(),
                         lastAuthenticator.getValue()),
                 clientLookupMap.get(lastAuthenticator.getClientId())
         ), "Verification failed: Last authenticator seems to be corrupted: %s", lastAuthenticator);
 
+        final List<Operation> successful = Stream.concat(message.getPrecedingOperationsList().stream(), Stream.of(operation))
+                .filter(o -> o.getStatus() == SUCCESS)
+                .collect(Collectors.toList());
+
         Authenticator newAuthenticator;
-        if (operation.getStatus() == ABORT) {
+        if (successful.isEmpty()) {
             // reuse previous authenticator and do not execute operation
             LOG.debug("Operation was aborted. Reuse authenticator value from previous one.");
             newAuthenticator = lastAuthenticator;
         } else {
-            OperationProcessor.AuthExecResult authExecResult = operationProcessor.authexec(ImmutableList.of(operation), lastAuthenticator, result, auxiliaryData);
+            OperationProcessor.AuthExecResult authExecResult = operationProcessor.authexec(successful, lastAuthenticator, result, auxiliaryData);
             if (!authExecResult.isValid())
                 throw new IntegrityException("Integrity violation while updating authenticator");
 
@@ -258,9 +357,9 @@ public class ClientProtocolImpl implements ClientProtocol {
 
         final String authenticatorSignature = cryptoUtils.sign(
                 ImmutableList.of("AUTH",
-                        cryptoUtils.generateOperationUUID(operation, operation.getClientId()),
+                        cryptoUtils.operationUUID(operation),
                         operation.getClientId(),
-                        String.valueOf(operation.getSequenceNumber()),
+                        operation.getSequenceNumber(),
                         newAuthenticator.getValue()),
                 clientIdentifier
         );
@@ -276,6 +375,55 @@ public class ClientProtocolImpl implements ClientProtocol {
                 .build();
     }
 
+    /**
+     * Checks that the operation is compatible with the operations pending before it and verifies its result against
+     * the authenticator.
+     *
+     * @return SUCCESS, or ABORT if the operation is not compatible
+     */
+    private Status authenticate(final List<Operation> pendingOperations, final Operation operation,
+                                final Authenticator authenticator, final Result result,
+                                final AuxiliaryData auxiliaryData) throws IntegrityException {
+        // if pending op has already abort status, we can drop that one
+        List<Operation> pendingOthers = pendingOperations.stream()
+                .filter(o -> !o.getClientId().equals(getClientId()))
+                .filter(o -> o.getStatus() == UNKNOWN)
+                .collect(Collectors.toList());
+
+        // own operations still pending at the server are executed before the current one, the result is void if
+        // one of them has been aborted in the meantime
+        boolean pendingSelfAborted = pendingOperations.stream()
+                .filter(o -> o.getClientId().equals(getClientId()))
+                .anyMatch(o -> o.getStatus() == UNKNOWN && status.get(o.getSequenceNumber()) == ABORT);
+
+        // isCompatible check
+        if (pendingSelfAborted || !operationProcessor.isCompatible(pendingOthers, operation)) {
+            LOG.debug("[ABORT] Operation is not compatible.");
+            return ABORT;
+        }
+        LOG.debug("[SUCCESS] Operation is compatible!");
+
+        // successful operations by others
+        List<Operation> successOthers = pendingOperations.stream()
+                .filter(o -> !o.getClientId().equals(getClientId()))
+                .filter(o -> o.getStatus() != SUCCESS)
+                .collect(Collectors.toList());
+
+        List<Operation> pendingSelfs = pendingOperations.stream()
+                .filter(o -> o.getClientId().equals(getClientId()))
+                .filter(o -> o.getStatus() != ABORT)
+                .collect(Collectors.toList());
+
+        successOthers.addAll(pendingSelfs);
+        successOthers.add(operation);
+
+        if (!operationProcessor.authexec(successOthers, authenticator, result, auxiliaryData).isValid()) {
+            LOG.error("Integrity violation detected!!! Protocol has been stopped!");
+            throw new IntegrityException("Integrity violation detected");
+        }
+        return SUCCESS;
+    }
+
     /**
      * @return sequence number of the last operation in the input list of operations
      */
@@ -283,23 +431,21 @@ public class ClientProtocolImpl implements ClientProtocol {
         checkNotNull(deltaOperations, "deltaOperations");
         checkNotNull(authenticator, "Authenticator");
 
-        // verify operations
-        Operation operation = deltaOperations.stream().map(o -> {
+        checkState(!deltaOperations.isEmpty(), "Empty deltaOperations");
+
+        // verify operations, the hash chain is extended in order before the signatures are checked
+        final List<String> hashes = deltaOperations.stream().map(o -> {
             LOG.trace("CheckVIewOp: {}", TextFormat.printToString(o));
+            checkState(hasValidUUID(o), "Verification failed: UUID does not match operation %s", o);
             checkState(cryptoUtils.extendHashChain(o, hashChain), "Hash chain verification failed");
-            checkState(cryptoUtils.verify(o.getSignature(),
-                    ImmutableList.of("COMMIT",
-                            cryptoUtils.generateOperationUUID(o, o.getClientId()),
-                            o.getClientId(),
-                            String.valueOf(o.getSequenceNumber()),
-                            o.getStatus().toString(),
-                            hashChain.get(o.getSequenceNumber())),
-                    clientLookupMap.get(o.getClientId())
-            ), "Verification failed: Committed operation seems to be corrupted: %s", o);
-            return o;
-        }).reduce((prev, next) -> next).get();
-
-        checkState(operation != null, "Empty deltaOperations");
+            return hashChain.get(o.getSequenceNumber());
+        }).collect(Collectors.toList());
+
+        final int corrupted = findUnverified(deltaOperations, hashes, this::verifyCommit);
+        checkState(corrupted < 0, "Verification failed: Committed operation seems to be corrupted: %s",
+                corrupted < 0 ? null : deltaOperations.get(corrupted));
+
+        final Operation operation = deltaOperations.get(deltaOperations.size() - 1);
 
         String clientID = authenticator.getClientId();
         LOG.debug("Search for clientID {}", clientID);
@@ -310,9 +456,9 @@ public class ClientProtocolImpl implements ClientProtocol {
         // verify authenticator
         checkArgument(cryptoUtils.verify(authenticator.getSignature(),
                 ImmutableList.of("AUTH",
-                        cryptoUtils.generateOperationUUID(operation, operation.getClientId()),
+                        cryptoUtils.operationUUID(operation),
                         operation.getClientId(),
-                        String.valueOf(operation.getSequenceNumber()),
+                        operation.getSequenceNumber(),
                         authenticator.getValue()),
                 clientIdentifier
         ), "Verification failed: Last authenticator seems to be corrupted: %s", authenticator);
@@ -322,8 +468,54 @@ public class ClientProtocolImpl implements ClientProtocol {
         return operation.getSequenceNumber();
     }
 
+    /**
+     * Adopts the hash chain value preceding the delta operations if the server truncated its history since the last
+     * operation known by this client. The value is only adopted once the commit signature of the first delta
+     * operation, which covers its sequence number and the hash chain value extending the checkpoint, is verified
+     * and the checkpoint agrees with the hash chain values this client already knows, e.g., of its own operations.
+     * The skipped operations themselves are not verified, hence a checkpoint skipping an operation of this client
+     * is rejected as its membership in the hash chain could not be checked.
+     */
+    private void resumeFromCheckpoint(final List<Operation> deltaOperations, final String checkpointHash)
+            throws IntegrityException {
+        checkState(!deltaOperations.isEmpty(), "Empty deltaOperations");
+        final Operation first = deltaOperations.get(0);
+        final long sequenceNumber = first.getSequenceNumber() - 1;
+        checkState(sequenceNumber > lastSequenceNumber.get(), "Checkpoint %s does not skip any operation", sequenceNumber);
+        if (!status.range(lastSequenceNumber.get() + 1, sequenceNumber).isEmpty()) {
+            throw new IntegrityException("Checkpoint " + sequenceNumber + " skips operations of this client");
+        }
+
+        final String firstHash = cryptoUtils.nextHashChainValue(checkpointHash, first);
+        if (first.getStatus() == UNKNOWN || !hasValidUUID(first) || !verifyCommit(first, firstHash)) {
+            throw new IntegrityException("Checkpoint " + sequenceNumber + " is not signed by the commit of operation "
+                    + first.getSequenceNumber());
+        }
+        if (!checkpointHash.equals(hashChain.getOrDefault(sequenceNumber, checkpointHash))
+                || !firstHash.equals(hashChain.getOrDefault(first.getSequenceNumber(), firstHash))) {
+            throw new IntegrityException("Checkpoint " + sequenceNumber + " conflicts with hash chain");
+        }
+
+        LOG.warn("History truncated by the server, resume from checkpoint {}", sequenceNumber);
+        hashChain.put(sequenceNumber, checkpointHash);
+    }
+
     private long updateSequenceNumber(long sequenceNumber) {
-        return lastSequenceNumber.updateAndGet(current -> max(current, sequenceNumber));
+        final long last = lastSequenceNumber.updateAndGet(current -> max(current, sequenceNumber));
+        compact(last);
+        return last;
+    }
+
+    /**
+     * Drops hash chain values and statuses below the last known operation. The server sends the next delta from
+     * that operation on, so its hash chain value and the one of its predecessor are kept to extend the chain.
+     * Replies to pipelined invocations start at the last known operation when they were invoked, the values from
+     * the earliest such start on are kept as well.
+     */
+    private void compact(long lastSequenceNumber) {
+        final long start = invocationStarts.values().stream().reduce(lastSequenceNumber, Math::min);
+        hashChain.truncate(start - 1);
+        status.truncate(start);
     }
 
     /**
@@ -333,31 +525,101 @@ public class ClientProtocolImpl implements ClientProtocol {
         // verify that at least the current operation is included
         checkState(pendingOperations.size() > 0, "pending List is empty");
 
-        // verify operation
-        Operation operation = pendingOperations.stream().map(o -> {
+        // verify operations, the hash chain is extended in order before the signatures are checked
+        final List<String> hashes = pendingOperations.stream().map(o -> {
             LOG.trace("CheckPendingOp: {}", TextFormat.printToString(o));
+            checkState(hasValidUUID(o), "Verification failed: UUID does not match operation %s", o);
             checkState(cryptoUtils.extendHashChain(o, hashChain), "Hash chain verification failed for operation %s", o);
+            return hashChain.get(o.getSequenceNumber());
+        }).collect(Collectors.toList());
+
+        final int corrupted = findUnverified(pendingOperations, hashes,
+                (o, hash) -> o.getStatus() == UNKNOWN ? verifyInvoke(o, hash) : verifyCommit(o, hash));
+        checkState(corrupted < 0, "Verification failed: Invoke Operation seems to be corrupted: %s",
+                corrupted < 0 ? null : pendingOperations.get(corrupted));
+    }
+
+    private boolean verifyInvoke(final Operation operation, final String hash) {
+        return verifyOnce("INVOKE", operation, hash, () -> cryptoUtils.verify(operation.getSignature(),
+                ImmutableList.of("INVOKE",
+                        cryptoUtils.operationUUID(operation),
+                        operation.getClientId()),
+                clientLookupMap.get(operation.getClientId())));
+    }
+
+    private boolean verifyCommit(final Operation operation, final String hash) {
+        return verifyOnce("COMMIT", operation, hash, () -> cryptoUtils.verify(operation.getSignature(),
+                ImmutableList.of("COMMIT",
+                        cryptoUtils.operationUUID(operation),
+                        operation.getClientId(),
+                        operation.getSequenceNumber(),
+                        operation.getStatus(),
+                        hash),
+                clientLookupMap.get(operation.getClientId())));
+    }
+
+    /**
+     * Checks that the carried UUID matches the content of the operation. Signatures and the hash chain cover the UUID
+     * only, so the content is hashed on first receipt and compared to that copy afterwards.
+     */
+    private boolean hasValidUUID(final Operation operation) {
+        if (operation.getUuid().isEmpty()) {
+            // generated from the content on every use
+            return true;
+        }
+        final Operation content = contentOf(operation);
+        final Operation verified = verifiedOperations.getIfPresent(operation.getUuid());
+        if (verified != null) {
+            return verified.equals(content);
+        }
+        if (!operation.getUuid().equals(cryptoUtils.generateOperationUUID(operation, operation.getClientId()))) {
+            return false;
+        }
+        verifiedOperations.put(operation.getUuid(), content);
+        return true;
+    }
+
+    /**
+     * @return the operation without the fields assigned after its invocation
+     */
+    private static Operation contentOf(final Operation operation) {
+        return operation.toBuilder().clearSequenceNumber().clearStatus().clearSignature().build();
+    }
+
+    /**
+     * Skips signatures verified before. The hash chain value of the operation covers its UUID and client, so
+     * together with the type, status, sequence number and signature it determines the signed items.
+     */
+    private boolean verifyOnce(final String type, final Operation operation, final String hash,
+                               final BooleanSupplier verification) {
+        final List<Object> key = ImmutableList.of(type, operation.getStatus(), operation.getSequenceNumber(),
+                operation.getSignature(), hash);
+        if (verifiedSignatures.getIfPresent(key) != null) {
+            return true;
+        }
+        if (!verification.getAsBoolean()) {
+            return false;
+        }
+        verifiedSignatures.put(key, Boolean.TRUE);
+        return true;
+    }
 
-            if (o.getStatus() == UNKNOWN) {
-                checkState(cryptoUtils.verify(o.getSignature(),
-                        ImmutableList.of("INVOKE",
-                                cryptoUtils.generateOperationUUID(o, o.getClientId()),
-                                o.getClientId()),
-                        clientLookupMap.get(o.getClientId())
-                ), "Verification failed: Invoke Operation seems to be corrupted: %s", o);
-            } else {
-                checkState(cryptoUtils.verify(o.getSignature(),
-                        ImmutableList.of("COMMIT",
-                                cryptoUtils.generateOperationUUID(o, o.getClientId()),
-                                o.getClientId(),
-                                String.valueOf(o.getSequenceNumber()),
-                                o.getStatus().toString(),
-                                hashChain.get(o.getSequenceNumber())),
-                        clientLookupMap.get(o.getClientId())
-                ), "Verification failed: Invoke Operation seems to be corrupted: %s", o);
-            }
-            return o;
-        }).reduce((prev, next) -> next).get();
+    /**
+     * Checks the signatures of independent operations, on the verification pool if there are at least
+     * parallelVerificationThreshold of them.
+     *
+     * @return index of an operation failing the check, -1 if all pass
+     */
+    private int findUnverified(final List<Operation> operations, final List<String> hashes,
+                               final BiPredicate<Operation, String> verifier) {
+        final IntStream indices = IntStream.range(0, operations.size());
+        if (operations.size() < parallelVerificationThreshold) {
+            return indices.filter(i -> !verifier.test(operations.get(i), hashes.get(i))).findFirst().orElse(-1);
+        }
+        return verificationPool.submit(() -> indices.parallel()
+                .filter(i -> !verifier.test(operations.get(i), hashes.get(i)))
+                .findAny()
+                .orElse(-1)).join();
     }
 
     @Override
@@ -371,14 +633,14 @@ public class ClientProtocolImpl implements ClientProtocol {
                 .setStatus(SUCCESS)
                 .build();
 
-        op = Operation.newBuilder().mergeFrom(op).build();
+        op = Operation.newBuilder().mergeFrom(op).setUuid(cryptoUtils.generateOperationUUID(op, getClientId())).build();
         checkArgument(cryptoUtils.extendHashChain(op, hashChain), "ExtendHashChain");
 
         String signature = cryptoUtils.sign(ImmutableList.of("COMMIT",
-                        cryptoUtils.generateOperationUUID(op, op.getClientId()),
+                        cryptoUtils.operationUUID(op),
                         getClientId(),
-                        String.valueOf(op.getSequenceNumber()),
-                        op.getStatus().toString(),
+                        op.getSequenceNumber(),
+                        op.getStatus(),
                         hashChain.get(op.getSequenceNumber())),
                 clientIdentifier
         );
@@ -393,9 +655,9 @@ public class ClientProtocolImpl implements ClientProtocol {
 
         final String authenticatorSignature = cryptoUtils.sign(
                 ImmutableList.of("AUTH",
-                        cryptoUtils.generateOperationUUID(op, op.getClientId()),
+                        cryptoUtils.operationUUID(op),
                         op.getClientId(),
-                        String.valueOf(1),
+                        1L,
                         authenticator.getValue()),
                 clientIdentifier
         );
@@ -83,6 +83,15 @@ public class ClientThrottleActor extends UntypedActorWithStash {
                 in.tell(message, getSender());
                 break;
             }
+            case READ: {
+                // reads are not sequenced and do not count as operations in progress
+                out.tell(message, getSender());
+                break;
+            }
+            case READ_REPLY: {
+                in.tell(message, getSender());
+                break;
+            }
             case COMMIT: {
                 out.tell(message, getSender());
                 break;
@@ -16,142 +16,285 @@
 
 package com.ibm.vicos.client;
 
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.name.Named;
 
+import com.ibm.vicos.common.AsyncStorageAPI;
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.KeyNotFoundException;
 import com.ibm.vicos.common.Operations;
 import com.ibm.vicos.common.Operations.Operation;
 import com.ibm.vicos.common.Operations.Result;
 import com.ibm.vicos.common.StorageAPI;
+import com.ibm.vicos.common.util.Utils;
+import com.ibm.vicos.exceptions.FlowControlException;
 import com.ibm.vicos.exceptions.IntegrityException;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.dispatch.OnComplete;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
-import scala.concurrent.Await;
-import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.ibm.vicos.common.Operations.OpCode.BATCH;
 import static com.ibm.vicos.common.Operations.OpCode.DELETE;
 import static com.ibm.vicos.common.Operations.OpCode.GET;
 import static com.ibm.vicos.common.Operations.OpCode.INIT;
 import static com.ibm.vicos.common.Operations.OpCode.LIST;
 import static com.ibm.vicos.common.Operations.OpCode.PUT;
-import static com.ibm.vicos.common.util.Utils.backoffSleep;
+import static com.ibm.vicos.common.util.Utils.backoffDelay;
+import static com.ibm.vicos.common.util.Utils.shardOf;
 
-public class VICOSClient implements StorageAPI<String, String> {
+/**
+ * Client facade offering the KVS operations both blocking and as futures. Futures are completed from the actor
+ * system's dispatcher and aborted operations are retried through its scheduler, so no thread is parked while an
+ * operation is in progress.
+ *
+ * Operations are routed by key to the client actor of the owning server shard, see {@link Utils#shardOf}. LIST
+ * and INIT address all shards, a batch is split into one batch per shard. Linearizability holds per shard only.
+ */
+public class VICOSClient implements StorageAPI<String, String>, AsyncStorageAPI<String, String> {
 
     private static final Logger LOG = LoggerFactory.getLogger(VICOSClient.class);
     private static final FiniteDuration RESPONSE_TIMEOUT = Duration.create(500, TimeUnit.SECONDS);
-    private final ActorRef clientActorRef;
+    // start with max backoff of 1.5^4 = ~25ms
+    private static final int FIRST_RETRY_ATTEMPT = 4;
+    // max backoff 1.5^17 = ~985ms
+    private static final int LAST_RETRY_ATTEMPT = 17;
+    private final List<ActorRef> clientActorRefs; // indexed by shard
     private final ClientIdentifier clientIdentifier;
+    private final ActorSystem system;
     private final boolean retryOnAbort;
 
 
     @Inject
-    public VICOSClient(@Assisted ActorRef clientActorRef,
+    public VICOSClient(@Assisted List<ActorRef> clientActorRefs,
                        @Assisted ClientIdentifier clientIdentifier,
+                       ActorSystem system,
                        @Named("retryOnAbort") boolean retryOnAbort) {
-        this.clientActorRef = checkNotNull(clientActorRef, "clientActorRef");
+        this.clientActorRefs = ImmutableList.copyOf(checkNotNull(clientActorRefs, "clientActorRefs"));
+        checkArgument(!clientActorRefs.isEmpty(), "At least one client actor is required");
         this.clientIdentifier = checkNotNull(clientIdentifier, "ClientIdentifier");
+        this.system = checkNotNull(system, "system");
         this.retryOnAbort = checkNotNull(retryOnAbort, "retryOnAbort");
     }
 
     @Override
     public void init() {
-        executeOperation(Operation.newBuilder().setOpCode(INIT).build());
+        join(initAsync());
     }
 
     @Override
     public void put(final String key, final String value) throws IntegrityException {
-        Result result = executeOperation(Operation.newBuilder().setOpCode(PUT).setKey(key).setValue(value).build());
-        if (result.getResultType() == Operations.ResultType.INTEGRITY_VIOLATION) {
-            throw new IntegrityException("Integrity violation detected");
-        }
+        join(putAsync(key, value));
     }
 
     @Override
     public String get(final String key) throws KeyNotFoundException, IntegrityException {
-        Result result = executeOperation(Operation.newBuilder().setOpCode(GET).setKey(key).build());
-
-        switch (result.getResultType()) {
-            case KEY_NOT_FOUND:
-                throw new KeyNotFoundException("key: " + key + " does not exist");
-            case INTEGRITY_VIOLATION:
-                throw new IntegrityException("Integrity violation detected");
-            default:
-                return result.getValues(0);
-        }
+        return joinKeyed(getAsync(key));
     }
 
     @Override
     public String remove(final String key) throws KeyNotFoundException, IntegrityException {
-        Result result = executeOperation(Operation.newBuilder().setOpCode(DELETE).setKey(key).build());
-        switch (result.getResultType()) {
-            case KEY_NOT_FOUND:
-                throw new KeyNotFoundException("key: " + key + " does not exist");
-            case INTEGRITY_VIOLATION:
-                throw new IntegrityException("Integrity violation detected");
-            default:
-                return result.getValues(0);
-        }
+        return joinKeyed(removeAsync(key));
     }
 
     @Override
     public Iterable<String> list() throws IntegrityException {
-        Result result = executeOperation(Operation.newBuilder().setOpCode(LIST).build());
-        switch (result.getResultType()) {
-            case INTEGRITY_VIOLATION:
-                throw new IntegrityException("Integrity violation detected");
-            default:
-                return result.getValuesList();
-        }
+        return join(listAsync());
     }
 
-    private Result executeOperation(final Operation operation) {
+    @Override
+    public CompletableFuture<Void> initAsync() {
+        return CompletableFuture.allOf(clientActorRefs.stream()
+                .map(ref -> executeOperation(ref, Operation.newBuilder().setOpCode(INIT).build()))
+                .toArray(CompletableFuture[]::new));
+    }
 
-        // start with max sleep time of 1.5^4 = ~25ms
-        int retryAttempts = 4;
-        boolean retry;
+    @Override
+    public CompletableFuture<Void> putAsync(final String key, final String value) {
+        return executeOperation(Operation.newBuilder().setOpCode(PUT).setKey(key).setValue(value).build())
+                .thenApply(result -> {
+                    if (result.getResultType() == Operations.ResultType.INTEGRITY_VIOLATION) {
+                        throw new IntegrityException("Integrity violation detected");
+                    }
+                    return null;
+                });
+    }
 
-        Result result;
-        do {
-            retry = false;
-            try {
-                Future<Object> response = Patterns.ask(clientActorRef, operation,
-                        Timeout.durationToTimeout(RESPONSE_TIMEOUT));
-                result = (Result) Await.result(response, RESPONSE_TIMEOUT);
-            } catch (Exception e) {
-                LOG.warn("Operation execution interruption", e);
-                throw new RuntimeException(e);
-            }
+    @Override
+    public CompletableFuture<String> getAsync(final String key) {
+        return executeOperation(Operation.newBuilder().setOpCode(GET).setKey(key).build())
+                .thenApply(keyedValue(key));
+    }
+
+    @Override
+    public CompletableFuture<String> removeAsync(final String key) {
+        return executeOperation(Operation.newBuilder().setOpCode(DELETE).setKey(key).build())
+                .thenApply(keyedValue(key));
+    }
+
+    @Override
+    public CompletableFuture<Iterable<String>> listAsync() {
+        final List<CompletableFuture<Result>> results = clientActorRefs.stream()
+                .map(ref -> executeOperation(ref, Operation.newBuilder().setOpCode(LIST).build()))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<String> keys = Lists.newArrayList();
+                    for (CompletableFuture<Result> future : results) {
+                        Result result = future.join();
+                        if (result.getResultType() == Operations.ResultType.INTEGRITY_VIOLATION) {
+                            throw new IntegrityException("Integrity violation detected");
+                        }
+                        keys.addAll(result.getValuesList());
+                    }
+                    if (results.size() > 1) {
+                        // each shard lists its keys in order
+                        Collections.sort(keys);
+                    }
+                    return keys;
+                });
+    }
 
-            if (result.getStatus().equals(Operations.Status.ABORT)) {
-                if (retryOnAbort) {
-                    LOG.info("Operation aborted! Try again: Attempt: {} [{}]", retryAttempts, operation);
-                    // max sleep time 1.5^15 = ~437ms
-                    // max sleep time 1.5^17 = ~985ms
-                    backoffSleep(retryAttempts++ > 17 ? 17 : retryAttempts);
-                    retry = true;
-                } else {
-                    throw new RuntimeException("Operation aborted");
-                }
+    /**
+     * Executes PUT, GET and DELETE operations in the given order as a single operation, so the whole batch is
+     * sequenced, verified and committed with the messages and signatures of one operation.
+     *
+     * @return the result of each operation, KEY_NOT_FOUND is reported as result type
+     */
+    public List<Result> batch(final List<Operation> operations) throws IntegrityException {
+        return join(batchAsync(operations));
+    }
+
+    public CompletableFuture<List<Result>> batchAsync(final List<Operation> operations) {
+        checkArgument(!operations.isEmpty(), "No operations to execute");
+        checkArgument(operations.stream().allMatch(KVSOperationProcessor::isBatchable),
+                "Only PUT, GET and DELETE operations can be batched");
+
+        // positions of the operations per shard, each shard executes its part as one batch
+        final Map<Integer, List<Integer>> positions = Maps.newTreeMap();
+        for (int i = 0; i < operations.size(); i++) {
+            positions.computeIfAbsent(shardOf(operations.get(i).getKey(), clientActorRefs.size()),
+                    shard -> Lists.newArrayList()).add(i);
+        }
+
+        final Result[] results = new Result[operations.size()];
+        return CompletableFuture.allOf(positions.entrySet().stream().map(entry -> {
+            Operation.Builder batch = Operation.newBuilder().setOpCode(BATCH);
+            entry.getValue().forEach(i -> batch.addOperations(operations.get(i)));
+            return executeOperation(clientActorRefs.get(entry.getKey()), batch.build())
+                    .thenAccept(result -> {
+                        if (result.getResultType() == Operations.ResultType.INTEGRITY_VIOLATION) {
+                            throw new IntegrityException("Integrity violation detected");
+                        }
+                        for (int j = 0; j < entry.getValue().size(); j++) {
+                            results[entry.getValue().get(j)] = result.getResults(j);
+                        }
+                    });
+        }).toArray(CompletableFuture[]::new)).thenApply(ignored -> Arrays.asList(results));
+    }
+
+    private static Function<Result, String> keyedValue(final String key) {
+        return result -> {
+            switch (result.getResultType()) {
+                case KEY_NOT_FOUND:
+                    throw new CompletionException(new KeyNotFoundException("key: " + key + " does not exist"));
+                case INTEGRITY_VIOLATION:
+                    throw new IntegrityException("Integrity violation detected");
+                default:
+                    return result.getValues(0);
             }
+        };
+    }
 
-        } while (retry);
+    private CompletableFuture<Result> executeOperation(final Operation operation) {
+        return executeOperation(clientActorRefs.get(shardOf(operation.getKey(), clientActorRefs.size())), operation);
+    }
 
-        checkNotNull(result, "OperationResult is null");
-        return result;
+    private CompletableFuture<Result> executeOperation(final ActorRef clientActorRef, final Operation operation) {
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        executeOperation(clientActorRef, operation, FIRST_RETRY_ATTEMPT, future);
+        return future;
+    }
+
+    /**
+     * Asks the client actor to execute the operation, aborted operations and operations rejected by flow control
+     * are retried after a random backoff.
+     */
+    private void executeOperation(final ActorRef clientActorRef, final Operation operation, final int attempt,
+                                  final CompletableFuture<Result> future) {
+        Patterns.ask(clientActorRef, operation, Timeout.durationToTimeout(RESPONSE_TIMEOUT))
+                .onComplete(new OnComplete<Object>() {
+                    @Override
+                    public void onComplete(Throwable failure, Object response) {
+                        if (failure instanceof FlowControlException) {
+                            LOG.debug("Operation rejected by flow control! Try again: Attempt: {} [{}]", attempt, operation);
+                            retry(clientActorRef, operation, attempt, future);
+                        } else if (failure != null) {
+                            LOG.warn("Operation execution interruption", failure);
+                            future.completeExceptionally(failure);
+                        } else if (((Result) response).getStatus().equals(Operations.Status.ABORT)) {
+                            if (retryOnAbort) {
+                                LOG.info("Operation aborted! Try again: Attempt: {} [{}]", attempt, operation);
+                                retry(clientActorRef, operation, attempt, future);
+                            } else {
+                                future.completeExceptionally(new RuntimeException("Operation aborted"));
+                            }
+                        } else {
+                            future.complete(checkNotNull((Result) response, "OperationResult is null"));
+                        }
+                    }
+                }, system.dispatcher());
+    }
+
+    private void retry(final ActorRef clientActorRef, final Operation operation, final int attempt,
+                       final CompletableFuture<Result> future) {
+        system.scheduler().scheduleOnce(Duration.create(backoffDelay(attempt), TimeUnit.MILLISECONDS),
+                () -> executeOperation(clientActorRef, operation, Math.min(attempt + 1, LAST_RETRY_ATTEMPT), future),
+                system.dispatcher());
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IntegrityException.class);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static <T> T joinKeyed(CompletableFuture<T> future) throws KeyNotFoundException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), KeyNotFoundException.class);
+            Throwables.propagateIfInstanceOf(e.getCause(), IntegrityException.class);
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     public String getClientId() {
@@ -159,6 +302,6 @@ public class VICOSClient implements StorageAPI<String, String> {
     }
 
     public interface VICOSClientKVSAPIFactory {
-        VICOSClient create(ActorRef clientProtocolRef, ClientIdentifier clientIdentifier);
+        VICOSClient create(List<ActorRef> clientProtocolRefs, ClientIdentifier clientIdentifier);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.common;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link StorageAPI}, failures complete the returned future exceptionally with the
+ * exception the blocking call would throw.
+ */
+public interface AsyncStorageAPI<K, V> {
+
+    CompletableFuture<Void> initAsync();
+
+    /**
+     * Stores the key value pair
+     */
+    CompletableFuture<Void> putAsync(K key, V value);
+
+    /**
+     * Retrieves the value for key, fails with {@link KeyNotFoundException} if absent
+     */
+    CompletableFuture<V> getAsync(K key);
+
+    /**
+     * Removes a object with key, fails with {@link KeyNotFoundException} if absent
+     */
+    CompletableFuture<V> removeAsync(K key);
+
+    /**
+     * List all keys in KVS
+     */
+    CompletableFuture<Iterable<V>> listAsync();
+}
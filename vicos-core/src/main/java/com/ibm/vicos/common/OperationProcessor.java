@@ -32,8 +32,23 @@ public abstract class OperationProcessor<S extends State> {
 
     public abstract QueryResult query(S state, List<Operation> operation);
 
+    /**
+     * Server side: like {@link #query(State, List)} for a client keeping the state of the base authenticator, the
+     * applied operations follow the base up to the given state. The auxiliary data may only cover their changes.
+     */
+    public QueryResult query(S state, List<Operation> operation, Authenticator base, List<Operation> applied) {
+        return query(state, operation);
+    }
+
     public abstract AuthExecResult authexec(List<Operation> operation, Authenticator authenticator, Operations.Result result, AuxiliaryData auxiliaryData);
 
+    /**
+     * Client side: the latest authenticator whose state is kept by {@link #authexec}, the default instance if none
+     */
+    public Authenticator verifiedAuthenticator() {
+        return Authenticator.getDefaultInstance();
+    }
+
     public abstract S refresh(S state, Operation operation, AuxiliaryData auxiliaryData);
 
     public abstract boolean isCompatible(List<Operation> listOthers, Operation currentOperation);
@@ -42,6 +57,11 @@ public abstract class OperationProcessor<S extends State> {
 
     public abstract boolean isUpdateOperation(Operation operation);
 
+    /**
+     * @return false if the operation can not be executed, such operations must not be sequenced
+     */
+    public abstract boolean isValid(Operation operation);
+
     @AutoValue
     public static abstract class QueryResult {
 
@@ -38,6 +38,10 @@ public class PriorityMessageMailbox extends UnboundedStablePriorityMailbox {
                         return 2;
                     case REPLY:
                         return 2;
+                    case READ:
+                        return 2;
+                    case READ_REPLY:
+                        return 2;
                     case UPDATE_AUTH:
                         return 1;
                     case COMMIT:
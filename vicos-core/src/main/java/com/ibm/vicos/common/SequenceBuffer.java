@@ -0,0 +1,337 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.common;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Map indexed by sequence numbers, backed by a ring buffer covering the range from the lowest to the highest
+ * stored sequence number. Lookups and updates are O(1) without boxing the key, appending at either end and
+ * truncating the head are amortized O(1).
+ *
+ * Intended for dense, mostly increasing sequence numbers; absent sequence numbers within the covered range
+ * occupy an empty slot. Null values are not permitted. Not thread-safe.
+ */
+public class SequenceBuffer<V> extends AbstractMap<Long, V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MAX_SPAN = 1 << 30;
+
+    private Object[] slots;
+    private int head; // slot of the first sequence number
+    private long first;
+    private int span; // number of covered sequence numbers
+    private int size;
+
+    public SequenceBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SequenceBuffer(int initialCapacity) {
+        checkArgument(initialCapacity > 0 && initialCapacity <= MAX_SPAN, "Invalid capacity %s", initialCapacity);
+        this.slots = new Object[capacityFor(initialCapacity)];
+    }
+
+    public V get(long sequenceNumber) {
+        if (sequenceNumber < first || sequenceNumber - first >= span) {
+            return null;
+        }
+        return slot(sequenceNumber);
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Long ? get(((Long) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public V put(long sequenceNumber, V value) {
+        checkNotNull(value, "value");
+        cover(sequenceNumber);
+        int index = index(sequenceNumber);
+        V previous = slot(sequenceNumber);
+        slots[index] = value;
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put(checkNotNull(key, "key").longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof Long)) {
+            return null;
+        }
+        long sequenceNumber = (Long) key;
+        V previous = get(sequenceNumber);
+        if (previous == null) {
+            return null;
+        }
+        slots[index(sequenceNumber)] = null;
+        if (--size == 0) {
+            span = 0;
+        } else if (sequenceNumber == first) {
+            trimHead();
+        } else if (sequenceNumber == lastSequenceNumber()) {
+            trimTail();
+        }
+        return previous;
+    }
+
+    /**
+     * Removes all entries below the given sequence number.
+     */
+    public void truncate(long sequenceNumber) {
+        if (size == 0 || sequenceNumber <= first) {
+            return;
+        }
+        if (sequenceNumber > lastSequenceNumber()) {
+            clear();
+            return;
+        }
+        for (long i = first; i < sequenceNumber; i++) {
+            int index = index(i);
+            if (slots[index] != null) {
+                slots[index] = null;
+                size--;
+            }
+        }
+        advance((int) (sequenceNumber - first));
+        trimHead();
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, null);
+        head = 0;
+        span = 0;
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long firstSequenceNumber() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return first;
+    }
+
+    public long lastSequenceNumber() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return first + span - 1;
+    }
+
+    /**
+     * @return live view of the values stored from {@code from} to {@code to}, both inclusive, in sequence order
+     */
+    public Collection<V> range(final long from, final long to) {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Entry<Long, V>> entries = new EntryIterator(from, to);
+                return new Iterator<V>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public V next() {
+                        return entries.next().getValue();
+                    }
+
+                    @Override
+                    public void remove() {
+                        entries.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int count = 0;
+                for (long i = Math.max(from, first); size > 0 && i <= Math.min(to, lastSequenceNumber()); i++) {
+                    if (slot(i) != null) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return new AbstractSet<Entry<Long, V>>() {
+            @Override
+            public Iterator<Entry<Long, V>> iterator() {
+                return new EntryIterator(Long.MIN_VALUE, Long.MAX_VALUE);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                SequenceBuffer.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Extends the covered range to include the sequence number.
+     */
+    private void cover(long sequenceNumber) {
+        if (size == 0) {
+            head = 0;
+            first = sequenceNumber;
+            span = 1;
+            return;
+        }
+        if (sequenceNumber < first) {
+            long shift = first - sequenceNumber;
+            checkArgument(span + shift <= MAX_SPAN, "Sequence number %s too far below %s", sequenceNumber, first);
+            ensureCapacity(span + (int) shift);
+            head = (head - (int) shift) & (slots.length - 1);
+            first = sequenceNumber;
+            span += (int) shift;
+        } else if (sequenceNumber - first >= span) {
+            long required = sequenceNumber - first + 1;
+            checkArgument(required <= MAX_SPAN, "Sequence number %s too far above %s", sequenceNumber, first);
+            ensureCapacity((int) required);
+            span = (int) required;
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= slots.length) {
+            return;
+        }
+        Object[] resized = new Object[capacityFor(required)];
+        for (int i = 0; i < span; i++) {
+            resized[i] = slots[(head + i) & (slots.length - 1)];
+        }
+        slots = resized;
+        head = 0;
+    }
+
+    private void trimHead() {
+        while (slots[head] == null) {
+            advance(1);
+        }
+    }
+
+    private void trimTail() {
+        while (slot(first + span - 1) == null) {
+            span--;
+        }
+    }
+
+    private void advance(int count) {
+        head = (head + count) & (slots.length - 1);
+        first += count;
+        span -= count;
+    }
+
+    private int index(long sequenceNumber) {
+        return (head + (int) (sequenceNumber - first)) & (slots.length - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V slot(long sequenceNumber) {
+        return (V) slots[index(sequenceNumber)];
+    }
+
+    private static int capacityFor(int required) {
+        return Integer.highestOneBit(Math.max(required, 2) - 1) << 1;
+    }
+
+    private final class EntryIterator implements Iterator<Entry<Long, V>> {
+        private final long to;
+        private long next;
+        private long last;
+
+        private EntryIterator(long from, long to) {
+            this.to = to;
+            this.next = size == 0 ? 0 : Math.max(from, first);
+            this.last = Long.MIN_VALUE;
+            skipEmpty();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return size > 0 && next <= Math.min(to, lastSequenceNumber()) && next >= first;
+        }
+
+        @Override
+        public Entry<Long, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            Entry<Long, V> entry = new SimpleImmutableEntry<>(last, slot(last));
+            skipEmpty();
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            checkState(last != Long.MIN_VALUE, "next() has not been called");
+            SequenceBuffer.this.remove(last);
+            last = Long.MIN_VALUE;
+            skipEmpty();
+        }
+
+        private void skipEmpty() {
+            while (size > 0 && next >= first && next <= lastSequenceNumber() && slot(next) == null) {
+                next++;
+            }
+            if (size > 0 && next < first) {
+                next = first;
+            }
+        }
+    }
+}
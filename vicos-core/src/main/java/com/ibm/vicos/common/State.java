@@ -16,6 +16,9 @@
 
 package com.ibm.vicos.common;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
 /**
  * Created by bur on 22/09/15.
  */
@@ -24,4 +27,19 @@ public interface State {
     String ITEM_SEPARATOR = ":";
 
     void init();
+
+    /**
+     * @return a new empty state backed by the same storage, this state is left unchanged
+     */
+    State newState();
+
+    /**
+     * @return serialized form of the state, used for server snapshots
+     */
+    ByteString toByteString();
+
+    /**
+     * Replaces the content of this state by a serialized state obtained from {@link #toByteString()}
+     */
+    void restore(ByteString data) throws InvalidProtocolBufferException;
 }
@@ -0,0 +1,258 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.hash.HashFunction;
+
+import java.security.MessageDigest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * BLAKE2b message digest (RFC 7693) without key, salt and personalization. Operates on 64-bit words and is
+ * typically faster than SHA-256 on 64-bit platforms lacking SHA instructions.
+ */
+public final class Blake2b extends MessageDigest implements Cloneable {
+
+    private static final int BLOCK_LENGTH = 128;
+    private static final int ROUNDS = 12;
+    private static final long[] IV = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL, 0xa54ff53a5f1d36f1L,
+            0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L};
+    private static final byte[][] SIGMA = {
+            {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15},
+            {14, 10, 4, 8, 9, 15, 13, 6, 1, 12, 0, 2, 11, 7, 5, 3},
+            {11, 8, 12, 0, 5, 2, 15, 13, 10, 14, 3, 6, 7, 1, 9, 4},
+            {7, 9, 3, 1, 13, 12, 11, 14, 2, 6, 5, 10, 4, 0, 15, 8},
+            {9, 0, 5, 7, 2, 4, 10, 15, 14, 1, 11, 12, 6, 8, 3, 13},
+            {2, 12, 6, 10, 0, 11, 8, 3, 4, 13, 7, 5, 15, 14, 1, 9},
+            {12, 5, 1, 15, 14, 13, 4, 10, 0, 7, 6, 3, 9, 2, 8, 11},
+            {13, 11, 7, 14, 12, 1, 3, 9, 5, 0, 15, 4, 8, 6, 2, 10},
+            {6, 15, 14, 9, 11, 3, 0, 8, 12, 2, 13, 7, 1, 4, 10, 5},
+            {10, 2, 8, 4, 7, 6, 1, 5, 15, 11, 9, 14, 3, 12, 13, 0}};
+    private static final HashFunction BLAKE2B_256 = new DigestHashFunction("BLAKE2b-256", () -> new Blake2b(32));
+
+    private final int digestLength;
+    private long[] h = new long[8];
+    private long[] m = new long[16];
+    private byte[] buffer = new byte[BLOCK_LENGTH];
+    private int bufferLength;
+    // bytes compressed so far, the upper 64 bits of the RFC 7693 counter are never reached
+    private long counter;
+
+    /**
+     * @param digestLength in bytes, 1 to 64
+     */
+    public Blake2b(int digestLength) {
+        super("BLAKE2b-" + digestLength * Byte.SIZE);
+        checkArgument(digestLength > 0 && digestLength <= 64, "Invalid digest length %s", digestLength);
+        this.digestLength = digestLength;
+        engineReset();
+    }
+
+    /**
+     * @return hash function computing 256-bit BLAKE2b digests
+     */
+    public static HashFunction blake2b256() {
+        return BLAKE2B_256;
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return digestLength;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        if (bufferLength == BLOCK_LENGTH) {
+            compressBuffer();
+        }
+        buffer[bufferLength++] = input;
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        // the last block is compressed with the final flag by engineDigest, so a full block is only compressed
+        // once more input follows
+        if (bufferLength > 0) {
+            final int free = BLOCK_LENGTH - bufferLength;
+            if (length <= free) {
+                System.arraycopy(input, offset, buffer, bufferLength, length);
+                bufferLength += length;
+                return;
+            }
+            System.arraycopy(input, offset, buffer, bufferLength, free);
+            offset += free;
+            length -= free;
+            compressBuffer();
+        }
+        while (length > BLOCK_LENGTH) {
+            counter += BLOCK_LENGTH;
+            compress(input, offset, false);
+            offset += BLOCK_LENGTH;
+            length -= BLOCK_LENGTH;
+        }
+        System.arraycopy(input, offset, buffer, 0, length);
+        bufferLength = length;
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        counter += bufferLength;
+        for (int i = bufferLength; i < BLOCK_LENGTH; i++) {
+            buffer[i] = 0;
+        }
+        compress(buffer, 0, true);
+
+        final byte[] digest = new byte[digestLength];
+        for (int i = 0; i < digestLength; i++) {
+            digest[i] = (byte) (h[i >>> 3] >>> ((i & 7) << 3));
+        }
+        engineReset();
+        return digest;
+    }
+
+    @Override
+    protected void engineReset() {
+        System.arraycopy(IV, 0, h, 0, IV.length);
+        h[0] ^= 0x01010000L ^ digestLength;
+        bufferLength = 0;
+        counter = 0;
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        final Blake2b clone = (Blake2b) super.clone();
+        clone.h = h.clone();
+        clone.m = new long[m.length];
+        clone.buffer = buffer.clone();
+        return clone;
+    }
+
+    private void compressBuffer() {
+        counter += BLOCK_LENGTH;
+        compress(buffer, 0, false);
+        bufferLength = 0;
+    }
+
+    /**
+     * The working vector is kept in local variables, the mixing function G is inlined eight times per round.
+     */
+    private void compress(byte[] block, int offset, boolean last) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = readLong(block, offset + (i << 3));
+        }
+        long v0 = h[0], v1 = h[1], v2 = h[2], v3 = h[3], v4 = h[4], v5 = h[5], v6 = h[6], v7 = h[7];
+        long v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+        long v12 = IV[4] ^ counter, v13 = IV[5], v14 = last ? ~IV[6] : IV[6], v15 = IV[7];
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final byte[] s = SIGMA[round % SIGMA.length];
+            v0 += v4 + m[s[0]];
+            v12 = Long.rotateRight(v12 ^ v0, 32);
+            v8 += v12;
+            v4 = Long.rotateRight(v4 ^ v8, 24);
+            v0 += v4 + m[s[1]];
+            v12 = Long.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Long.rotateRight(v4 ^ v8, 63);
+
+            v1 += v5 + m[s[2]];
+            v13 = Long.rotateRight(v13 ^ v1, 32);
+            v9 += v13;
+            v5 = Long.rotateRight(v5 ^ v9, 24);
+            v1 += v5 + m[s[3]];
+            v13 = Long.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Long.rotateRight(v5 ^ v9, 63);
+
+            v2 += v6 + m[s[4]];
+            v14 = Long.rotateRight(v14 ^ v2, 32);
+            v10 += v14;
+            v6 = Long.rotateRight(v6 ^ v10, 24);
+            v2 += v6 + m[s[5]];
+            v14 = Long.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Long.rotateRight(v6 ^ v10, 63);
+
+            v3 += v7 + m[s[6]];
+            v15 = Long.rotateRight(v15 ^ v3, 32);
+            v11 += v15;
+            v7 = Long.rotateRight(v7 ^ v11, 24);
+            v3 += v7 + m[s[7]];
+            v15 = Long.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Long.rotateRight(v7 ^ v11, 63);
+
+            v0 += v5 + m[s[8]];
+            v15 = Long.rotateRight(v15 ^ v0, 32);
+            v10 += v15;
+            v5 = Long.rotateRight(v5 ^ v10, 24);
+            v0 += v5 + m[s[9]];
+            v15 = Long.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Long.rotateRight(v5 ^ v10, 63);
+
+            v1 += v6 + m[s[10]];
+            v12 = Long.rotateRight(v12 ^ v1, 32);
+            v11 += v12;
+            v6 = Long.rotateRight(v6 ^ v11, 24);
+            v1 += v6 + m[s[11]];
+            v12 = Long.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Long.rotateRight(v6 ^ v11, 63);
+
+            v2 += v7 + m[s[12]];
+            v13 = Long.rotateRight(v13 ^ v2, 32);
+            v8 += v13;
+            v7 = Long.rotateRight(v7 ^ v8, 24);
+            v2 += v7 + m[s[13]];
+            v13 = Long.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Long.rotateRight(v7 ^ v8, 63);
+
+            v3 += v4 + m[s[14]];
+            v14 = Long.rotateRight(v14 ^ v3, 32);
+            v9 += v14;
+            v4 = Long.rotateRight(v4 ^ v9, 24);
+            v3 += v4 + m[s[15]];
+            v14 = Long.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Long.rotateRight(v4 ^ v9, 63);
+        }
+
+        h[0] ^= v0 ^ v8;
+        h[1] ^= v1 ^ v9;
+        h[2] ^= v2 ^ v10;
+        h[3] ^= v3 ^ v11;
+        h[4] ^= v4 ^ v12;
+        h[5] ^= v5 ^ v13;
+        h[6] ^= v6 ^ v14;
+        h[7] ^= v7 ^ v15;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xffL);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ProtocolMessageEnum;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Binary encoding of the tuples that are signed or hashed. The encoding starts with its version, followed by every
+ * item as type tag and value: strings are length-prefixed UTF-8, integral numbers and protobuf enums are varints.
+ * It is unambiguous, distinct tuples never share an encoding, and tuples encoded by another version never match.
+ */
+public final class CanonicalEncoding {
+
+    // 2: sequence numbers and statuses are signed as numbers and enums instead of their text
+    public static final int VERSION = 2;
+    private static final byte STRING = 1;
+    private static final byte NUMBER = 2;
+    private static final byte ENUM = 3;
+
+    private CanonicalEncoding() {
+    }
+
+    public static byte[] encode(final Iterable<?> items) {
+        checkNotNull(items, "items");
+        int size = CodedOutputStream.computeUInt32SizeNoTag(VERSION);
+        for (Object item : items) {
+            size += 1 + sizeOf(checkNotNull(item, "item"));
+        }
+
+        final byte[] buffer = new byte[size];
+        final CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+        try {
+            output.writeUInt32NoTag(VERSION);
+            for (Object item : items) {
+                write(output, item);
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Items changed while being encoded", e);
+        }
+        return buffer;
+    }
+
+    private static int sizeOf(final Object item) {
+        if (isIntegral(item)) {
+            return CodedOutputStream.computeInt64SizeNoTag(((Number) item).longValue());
+        } else if (item instanceof ProtocolMessageEnum) {
+            return CodedOutputStream.computeInt32SizeNoTag(((ProtocolMessageEnum) item).getNumber());
+        }
+        return CodedOutputStream.computeStringSizeNoTag(item.toString());
+    }
+
+    private static void write(final CodedOutputStream output, final Object item) throws IOException {
+        if (isIntegral(item)) {
+            output.writeRawByte(NUMBER);
+            output.writeInt64NoTag(((Number) item).longValue());
+        } else if (item instanceof ProtocolMessageEnum) {
+            output.writeRawByte(ENUM);
+            output.writeInt32NoTag(((ProtocolMessageEnum) item).getNumber());
+        } else {
+            output.writeRawByte(STRING);
+            output.writeStringNoTag(item.toString());
+        }
+    }
+
+    private static boolean isIntegral(final Object item) {
+        return item instanceof Long || item instanceof Integer || item instanceof Short || item instanceof Byte;
+    }
+}
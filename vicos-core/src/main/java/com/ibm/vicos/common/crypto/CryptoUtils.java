@@ -16,11 +16,12 @@
 
 package com.ibm.vicos.common.crypto;
 
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
 
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.Operations;
@@ -36,7 +37,7 @@ import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.NavigableMap;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.ibm.vicos.common.util.Utils.base64decoding;
@@ -47,7 +48,10 @@ import static com.ibm.vicos.common.util.Utils.base64decoding;
 public abstract class CryptoUtils {
 
     public static final String DEFAULT_SECURE_RANDOM_ALGORITHM = "SHA1PRNG";
+    // hash chain value preceding the first operation
+    public static final String INIT_HASH = "InitHash";
     private static final String NULL_HASH = "";
+    private HashFunction hashFunction = Hashing.sha1();
 
     protected static X509EncodedKeySpec generateX509EncodedKeySpec(final String input) {
         return new X509EncodedKeySpec(base64decoding(input));
@@ -57,24 +61,34 @@ public abstract class CryptoUtils {
         return SecureRandom.getInstance(DEFAULT_SECURE_RANDOM_ALGORITHM);
     }
 
-    public abstract String sign(Iterable<String> items, ClientIdentifier clientIdentifier);
+    /**
+     * Signs the {@link CanonicalEncoding} of the items, numbers and protobuf enums are encoded by value.
+     */
+    public abstract String sign(Iterable<? extends Serializable> items, ClientIdentifier clientIdentifier);
 
-    public abstract boolean verify(String signature, Iterable<String> items, ClientIdentifier clientIdentifier);
+    public abstract boolean verify(String signature, Iterable<? extends Serializable> items,
+                                   ClientIdentifier clientIdentifier);
 
     public abstract KeyPairGenerator getKeyPairGenerator() throws NoSuchAlgorithmException;
 
     public abstract KeyFactory getKeyFactory() throws NoSuchAlgorithmException;
 
-    public abstract HashFunction getHashFunction();
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Replaces the default SHA-1, the clients and the server must use the same hash function.
+     */
+    @Inject(optional = true)
+    public void setHashFunction(@Named("hashFunction") final HashFunction hashFunction) {
+        this.hashFunction = checkNotNull(hashFunction, "hashFunction");
+    }
 
     public String hash(final Iterable<? extends Serializable> of) {
         checkNotNull(of, "of");
         if (Iterators.size(of.iterator()) > 0) {
-            Hasher hasher = getHashFunction().newHasher();
-            for (Object obj : of) {
-                hasher.putString(obj.toString(), Charsets.UTF_8);
-            }
-            return hasher.hash().toString();
+            return getHashFunction().hashBytes(CanonicalEncoding.encode(of)).toString();
         } else {
             return NULL_HASH;
         }
@@ -103,25 +117,43 @@ public abstract class CryptoUtils {
     public abstract KeyPair generateKeyPair() throws NoSuchAlgorithmException;
 
     public String generateOperationUUID(Operations.Operation operation, String clientId) {
-        return hash(ImmutableList.of(clientId, operation.getOpCodeValue(), operation.getKey(), operation.getValue()));
+        ImmutableList.Builder<Serializable> items = ImmutableList.<Serializable>builder()
+                .add(clientId, operation.getOpCodeValue(), operation.getKey(), operation.getValue());
+        // the operations of a batch are covered by its uuid and hence by all signatures over it
+        operation.getOperationsList().forEach(o -> items.add(o.getOpCodeValue(), o.getKey(), o.getValue()));
+        return hash(items.build());
     }
     
-    public boolean extendHashChain(final Operations.Operation operation, final NavigableMap<Long, String> hashChain) {
-        String expectedUuid = generateOperationUUID(operation, operation.getClientId());
+    /**
+     * @return the UUID carried by the operation, generated from its content if it has none
+     */
+    public String operationUUID(final Operations.Operation operation) {
+        return operation.getUuid().isEmpty() ? generateOperationUUID(operation, operation.getClientId()) : operation.getUuid();
+    }
 
+    public boolean extendHashChain(final Operations.Operation operation, final Map<Long, String> hashChain) {
         final long sequenceNumber = operation.getSequenceNumber();
         final String hash = hashChain.getOrDefault(sequenceNumber, "");
         final long prevSequenceNumber = sequenceNumber - 1;
-        final String prevHash = prevSequenceNumber < 1 ? "InitHash" : hashChain.getOrDefault(prevSequenceNumber, "");
+        final String prevHash = prevSequenceNumber < 1 ? INIT_HASH : hashChain.getOrDefault(prevSequenceNumber, "");
         if (!hash.isEmpty() && !prevHash.isEmpty()) {
             // we already know that value
-            return hash.equals(hash(ImmutableList.of(prevHash, expectedUuid, sequenceNumber, operation.getClientId())));
+            return hash.equals(nextHashChainValue(prevHash, operation));
         } else if (hash.isEmpty() && !prevHash.isEmpty()) {
             // add to hash chain
-            String value = hash(ImmutableList.of(prevHash, expectedUuid, sequenceNumber, operation.getClientId()));
-            hashChain.put(sequenceNumber, value);
+            hashChain.put(sequenceNumber, nextHashChainValue(prevHash, operation));
             return true;
         }
         return false;
     }
+
+    /**
+     * @return hash chain value of the operation given the value of its predecessor
+     */
+    public String nextHashChainValue(final String prevHash, final Operations.Operation operation) {
+        return hash(ImmutableList.of(prevHash,
+                operationUUID(operation),
+                operation.getSequenceNumber(),
+                operation.getClientId()));
+    }
 }
@@ -16,8 +16,6 @@
 
 package com.ibm.vicos.common.crypto;
 
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import com.google.inject.Singleton;
 
 @Singleton
@@ -26,7 +24,6 @@ public class DSACryptoUtilsImpl extends PKCryptoUtils {
     private static final String SIGNATURE_ALGORITHM = "SHA1withDSA";
     private static final String PKI_ALGORITHM = "DSA";
     private static final int PKI_KEY_SIZE = 2048;
-    private static final HashFunction HASH_FUNCTION = Hashing.sha1();
 
     public String getSignatureAlgorithm() {
         return SIGNATURE_ALGORITHM;
@@ -41,9 +38,4 @@ public class DSACryptoUtilsImpl extends PKCryptoUtils {
     public int getKeySize() {
         return PKI_KEY_SIZE;
     }
-
-    @Override
-    public HashFunction getHashFunction() {
-        return HASH_FUNCTION;
-    }
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.hash.Funnel;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+
+import com.ibm.vicos.exceptions.CryptoException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * {@link HashFunction} backed by {@link MessageDigest} instances, for digests Guava does not provide. Primitives
+ * are hashed in little-endian order like by the Guava hash functions.
+ */
+public final class DigestHashFunction implements HashFunction {
+
+    private final String name;
+    private final Supplier<MessageDigest> digests;
+    private final int bits;
+
+    /**
+     * @param digests supplies a new digest for every hasher
+     */
+    public DigestHashFunction(String name, Supplier<MessageDigest> digests) {
+        this.name = checkNotNull(name, "name");
+        this.digests = checkNotNull(digests, "digests");
+        this.bits = digests.get().getDigestLength() * Byte.SIZE;
+    }
+
+    /**
+     * @return hash function for a digest of the installed security providers
+     */
+    public static DigestHashFunction of(String algorithm) throws NoSuchAlgorithmException {
+        MessageDigest.getInstance(algorithm);
+        return new DigestHashFunction(algorithm, () -> {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new CryptoException("Digest " + algorithm + " is no longer available", e);
+            }
+        });
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new DigestHasher(digests.get());
+    }
+
+    @Override
+    public Hasher newHasher(int expectedInputSize) {
+        checkArgument(expectedInputSize >= 0, "expectedInputSize must be >= 0 but was %s", expectedInputSize);
+        return newHasher();
+    }
+
+    @Override
+    public HashCode hashInt(int input) {
+        return newHasher().putInt(input).hash();
+    }
+
+    @Override
+    public HashCode hashLong(long input) {
+        return newHasher().putLong(input).hash();
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] input) {
+        return hashBytes(input, 0, input.length);
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] input, int off, int len) {
+        return newHasher().putBytes(input, off, len).hash();
+    }
+
+    @Override
+    public HashCode hashUnencodedChars(CharSequence input) {
+        return newHasher().putUnencodedChars(input).hash();
+    }
+
+    @Override
+    public HashCode hashString(CharSequence input, Charset charset) {
+        return newHasher().putString(input, charset).hash();
+    }
+
+    @Override
+    public <T> HashCode hashObject(T instance, Funnel<? super T> funnel) {
+        return newHasher().putObject(instance, funnel).hash();
+    }
+
+    @Override
+    public int bits() {
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static final class DigestHasher implements Hasher {
+        private final MessageDigest digest;
+        private final ByteBuffer scratch = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private boolean done;
+
+        private DigestHasher(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public Hasher putByte(byte b) {
+            checkNotDone();
+            digest.update(b);
+            return this;
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes) {
+            return putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public Hasher putBytes(byte[] bytes, int off, int len) {
+            checkPositionIndexes(off, off + len, bytes.length);
+            checkNotDone();
+            digest.update(bytes, off, len);
+            return this;
+        }
+
+        @Override
+        public Hasher putShort(short s) {
+            scratch.clear();
+            return putScratch(scratch.putShort(s));
+        }
+
+        @Override
+        public Hasher putInt(int i) {
+            scratch.clear();
+            return putScratch(scratch.putInt(i));
+        }
+
+        @Override
+        public Hasher putLong(long l) {
+            scratch.clear();
+            return putScratch(scratch.putLong(l));
+        }
+
+        @Override
+        public Hasher putFloat(float f) {
+            return putInt(Float.floatToRawIntBits(f));
+        }
+
+        @Override
+        public Hasher putDouble(double d) {
+            return putLong(Double.doubleToRawLongBits(d));
+        }
+
+        @Override
+        public Hasher putBoolean(boolean b) {
+            return putByte(b ? (byte) 1 : (byte) 0);
+        }
+
+        @Override
+        public Hasher putChar(char c) {
+            scratch.clear();
+            return putScratch(scratch.putChar(c));
+        }
+
+        @Override
+        public Hasher putUnencodedChars(CharSequence charSequence) {
+            for (int i = 0; i < charSequence.length(); i++) {
+                putChar(charSequence.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Hasher putString(CharSequence charSequence, Charset charset) {
+            return putBytes(charSequence.toString().getBytes(charset));
+        }
+
+        @Override
+        public <T> Hasher putObject(T instance, Funnel<? super T> funnel) {
+            funnel.funnel(instance, this);
+            return this;
+        }
+
+        @Override
+        public HashCode hash() {
+            checkNotDone();
+            done = true;
+            return HashCode.fromBytes(digest.digest());
+        }
+
+        /**
+         * @deprecated as {@link Hasher#hashCode()}, use {@link #hash()} instead
+         */
+        @Override
+        @Deprecated
+        public int hashCode() {
+            return super.hashCode();
+        }
+
+        private Hasher putScratch(ByteBuffer bytes) {
+            return putBytes(bytes.array(), 0, bytes.position());
+        }
+
+        private void checkNotDone() {
+            checkState(!done, "Cannot re-use a Hasher after calling hash() on it");
+        }
+    }
+}
@@ -26,12 +26,12 @@ import java.io.Serializable;
 public class DummyCryptoUtilsImpl extends RSACryptoUtilsImpl {
 
     @Override
-    public String sign(Iterable<String> items, ClientIdentifier clientIdentifier) {
+    public String sign(Iterable<? extends Serializable> items, ClientIdentifier clientIdentifier) {
         return "DummySignature";
     }
 
     @Override
-    public boolean verify(String signature, Iterable<String> items, ClientIdentifier clientIdentifier) {
+    public boolean verify(String signature, Iterable<? extends Serializable> items, ClientIdentifier clientIdentifier) {
         return true;
     }
 
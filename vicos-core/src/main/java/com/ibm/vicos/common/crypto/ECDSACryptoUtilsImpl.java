@@ -0,0 +1,44 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.inject.Singleton;
+
+/**
+ * ECDSA signatures on the NIST P-256 curve.
+ */
+@Singleton
+public class ECDSACryptoUtilsImpl extends PKCryptoUtils {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+    private static final String PKI_ALGORITHM = "EC";
+    private static final int PKI_KEY_SIZE = 256;
+
+    public String getSignatureAlgorithm() {
+        return SIGNATURE_ALGORITHM;
+    }
+
+    @Override
+    public String getPkiAlgorithm() {
+        return PKI_ALGORITHM;
+    }
+
+    @Override
+    public int getKeySize() {
+        return PKI_KEY_SIZE;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.ibm.vicos.exceptions.CryptoException;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Per thread cache of crypto engines, e.g., {@link java.security.Signature} or {@link javax.crypto.Mac}, initialized
+ * with a key. Engines are not thread-safe while their lookup and initialization are expensive, hence every thread
+ * keeps its own engine per key. An engine is reset by completing its operation and evicted if that fails.
+ */
+class EngineCache<K extends Key, E> {
+
+    private static final int MAX_KEYS_PER_THREAD = 64;
+    private final EngineFactory<K, E> factory;
+    private final ThreadLocal<Map<K, E>> engines = ThreadLocal.withInitial(() ->
+            new LinkedHashMap<K, E>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, E> eldest) {
+                    return size() > MAX_KEYS_PER_THREAD;
+                }
+            });
+
+    EngineCache(EngineFactory<K, E> factory) {
+        this.factory = checkNotNull(factory, "factory");
+    }
+
+    /**
+     * @return the engine of the calling thread initialized with the key
+     */
+    E get(K key) {
+        checkNotNull(key, "key");
+        final Map<K, E> threadEngines = engines.get();
+        E engine = threadEngines.get(key);
+        if (engine == null) {
+            try {
+                engine = factory.create(key);
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException("Failed to initialize engine", e);
+            }
+            threadEngines.put(key, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Drops the engine of the calling thread, e.g., after it has been left in an undefined state
+     */
+    void invalidate(K key) {
+        engines.get().remove(key);
+    }
+
+    interface EngineFactory<K, E> {
+        E create(K key) throws GeneralSecurityException;
+    }
+}
@@ -25,8 +25,9 @@ import com.ibm.vicos.common.util.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.security.Key;
-import java.util.Arrays;
+import java.security.MessageDigest;
 
 import javax.crypto.Mac;
 import javax.inject.Inject;
@@ -40,42 +41,39 @@ public class HMacCryptoUtilsImpl extends RSACryptoUtilsImpl {
     private static final Logger LOG = LoggerFactory.getLogger(HMacCryptoUtilsImpl.class);
     private static final String DEFAULT_HMAC_ALGORITHM = "HmacSHA1";
     private final Key sharedKey;
+    private final EngineCache<Key, Mac> macs = new EngineCache<>(key -> {
+        Mac mac = Mac.getInstance(DEFAULT_HMAC_ALGORITHM);
+        mac.init(key);
+        return mac;
+    });
 
     @Inject
     public HMacCryptoUtilsImpl(@Named("sharedKey") Key sharedKey) {
         this.sharedKey = checkNotNull(sharedKey, "sharedKey");
     }
 
-    public String sign(final Iterable<String> items, final ClientIdentifier clientIdentifier) {
+    public String sign(final Iterable<? extends Serializable> items, final ClientIdentifier clientIdentifier) {
         checkNotNull(items, "items");
         checkNotNull(clientIdentifier, "clientIdentifier");
-        try {
-            Mac mac = Mac.getInstance(DEFAULT_HMAC_ALGORITHM);
-            mac.init(sharedKey);
-            for (String item : items) {
-                mac.update(Utils.utf8decoding(item));
-            }
-            return base64encoding(mac.doFinal());
-        } catch (Exception e) {
-            LOG.error("Error while sign \"{}\": {}", items, e);
-            return null;
-        }
+        return base64encoding(mac(items));
     }
 
-    public boolean verify(final String signature, final Iterable<String> items,
+    public boolean verify(final String signature, final Iterable<? extends Serializable> items,
                           final ClientIdentifier clientIdentifier) {
         checkNotNull(signature, "signature");
         checkNotNull(items, "items");
+        final byte[] signatureBytes;
         try {
-            Mac mac = Mac.getInstance(DEFAULT_HMAC_ALGORITHM);
-            mac.init(sharedKey);
-            for (String item : items) {
-                mac.update(Utils.utf8decoding(item));
-            }
-            return Arrays.equals(mac.doFinal(), Utils.base64decoding(signature));
-        } catch (Exception e) {
-            LOG.error("Error while verify signature \"{}\": {}", signature.toString(), e);
+            signatureBytes = Utils.base64decoding(signature);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Malformed signature \"{}\"", signature);
             return false;
         }
+        return MessageDigest.isEqual(mac(items), signatureBytes);
+    }
+
+    private byte[] mac(final Iterable<? extends Serializable> items) {
+        // doFinal resets the engine for the next use
+        return macs.get(sharedKey).doFinal(CanonicalEncoding.encode(items));
     }
 }
@@ -16,14 +16,15 @@
 
 package com.ibm.vicos.common.crypto;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.InvalidKeyException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -42,9 +43,20 @@ public class HashInputStream extends FilterInputStream {
     }
 
     public HashInputStream(final InputStream in, final byte[] expectedHash, final String hasherAlgorithm) throws NoSuchAlgorithmException, InvalidKeyException {
+        this(in, expectedHash, DigestHashFunction.of(hasherAlgorithm));
+    }
+
+    public HashInputStream(final InputStream in, final HashFunction hashFunction) {
+        this(in, null, hashFunction);
+    }
+
+    /**
+     * @param expectedHash checked at the end of the stream, null to only compute the hash
+     */
+    public HashInputStream(final InputStream in, final byte[] expectedHash, final HashFunction hashFunction) {
         super(checkNotNull(in, "inputstream"));
         this.expectedHash = expectedHash;
-        this.hasher = Hasher.getInstance(hasherAlgorithm);
+        this.hasher = checkNotNull(hashFunction, "hashFunction").newHasher();
 
         if (expectedHash != null) {
             validationMode = true;
@@ -79,10 +91,10 @@ public class HashInputStream extends FilterInputStream {
         int result = in.read(b, off, len);
 
         if (result > 0) {
-            hasher.update(b, 0, result);
+            hasher.putBytes(b, off, result);
             total += result;
         } else if (result == -1) {
-            hash = hasher.digest();
+            hash = hasher.hash().asBytes();
             isDone = true;
 
             if (validationMode) {
@@ -107,32 +119,4 @@ public class HashInputStream extends FilterInputStream {
     public byte[] getHash() {
         return isDone() ? hash : null;
     }
-
-    private static class Hasher {
-        private final MessageDigest md;
-
-        private AtomicBoolean isDone = new AtomicBoolean(false);
-
-        private Hasher(final String algorithm) throws NoSuchAlgorithmException, InvalidKeyException {
-            md = MessageDigest.getInstance(algorithm);
-        }
-
-        public static Hasher getInstance(final String algorithm) throws InvalidKeyException, NoSuchAlgorithmException {
-            return new Hasher(algorithm);
-        }
-
-        public final void update(byte[] bytes, int off, int len) throws IllegalStateException {
-            synchronized (md) {
-                checkState(!isDone.get(), "Already invoked digest");
-                md.update(bytes, off, len);
-            }
-        }
-
-        public final byte[] digest() throws IllegalStateException {
-            synchronized (md) {
-                isDone.compareAndSet(false, true);
-                return md.digest();
-            }
-        }
-    }
 }
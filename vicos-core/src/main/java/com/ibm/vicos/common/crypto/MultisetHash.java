@@ -0,0 +1,103 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+
+import java.math.BigInteger;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Incremental multiset hash (MuHash): the digest of a multiset is the product of its hashed items modulo a
+ * 2048-bit prime, so adding or removing an item costs one multiplication independent of the multiset size.
+ *
+ * Removals are accumulated in a separate denominator, the single modular inversion is deferred to {@link #digest()}.
+ */
+public class MultisetHash {
+
+    // RFC 3526 2048-bit MODP group prime
+    private static final BigInteger MODULUS = new BigInteger(
+            "FFFFFFFFFFFFFFFFC90FDAA22168C234C4C6628B80DC1CD129024E088A67CC74"
+                    + "020BBEA63B139B22514A08798E3404DDEF9519B3CD3A431B302B0A6DF25F1437"
+                    + "4FE1356D6D51C245E485B576625E7EC6F44C42E9A637ED6B0BFF5CB6F406B7ED"
+                    + "EE386BFB5A899FA5AE9F24117C4B1FE649286651ECE45B3DC2007CB8A163BF05"
+                    + "98DA48361C55D39A69163FA8FD24CF5F83655D23DCA3AD961C62F356208552BB"
+                    + "9ED529077096966D670C354E4ABC9804F1746C08CA18217C32905E462E36CE3B"
+                    + "E39E772C180E86039B2783A2EC07A28FB5C55DF06F4C52C9DE2BCBF695581718"
+                    + "3995497CEA956AE515D2261898FA051015728E5A8AACAA68FFFFFFFFFFFFFFFF", 16);
+    private static final int ELEMENT_BITS = MODULUS.bitLength() + 64;
+
+    private final CryptoUtils cryptoUtils;
+    private BigInteger numerator = BigInteger.ONE;
+    private BigInteger denominator = BigInteger.ONE;
+
+    public MultisetHash(CryptoUtils cryptoUtils) {
+        this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
+    }
+
+    public void add(String item) {
+        numerator = numerator.multiply(toElement(item)).mod(MODULUS);
+    }
+
+    public void remove(String item) {
+        denominator = denominator.multiply(toElement(item)).mod(MODULUS);
+    }
+
+    /**
+     * @return an independent hash of the same multiset, updates on either copy are not visible to the other one
+     */
+    public MultisetHash copy() {
+        MultisetHash copy = new MultisetHash(cryptoUtils);
+        copy.numerator = numerator;
+        copy.denominator = denominator;
+        return copy;
+    }
+
+    /**
+     * @return hex encoded digest, the digest of the empty multiset equals the hash of an empty item list
+     */
+    public String digest() {
+        BigInteger value = numerator.multiply(denominator.modInverse(MODULUS)).mod(MODULUS);
+        if (value.equals(BigInteger.ONE)) {
+            return cryptoUtils.hash(ImmutableList.of());
+        }
+        return value.toString(16);
+    }
+
+    /**
+     * Expands the item hash in counter mode to a uniformly distributed group element.
+     */
+    private BigInteger toElement(String item) {
+        final HashFunction hashFunction = cryptoUtils.getHashFunction();
+        byte[] buffer = new byte[(ELEMENT_BITS + 7) / 8];
+        int offset = 0;
+        for (int counter = 0; offset < buffer.length; counter++) {
+            byte[] block = hashFunction.newHasher()
+                    .putInt(counter)
+                    .putString(item, Charsets.UTF_8)
+                    .hash().asBytes();
+            int length = Math.min(block.length, buffer.length - offset);
+            System.arraycopy(block, 0, buffer, offset, length);
+            offset += length;
+        }
+        BigInteger element = new BigInteger(1, buffer).mod(MODULUS);
+        return element.signum() == 0 ? BigInteger.ONE : element;
+    }
+}
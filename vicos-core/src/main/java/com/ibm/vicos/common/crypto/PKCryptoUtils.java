@@ -18,16 +18,20 @@ package com.ibm.vicos.common.crypto;
 
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.util.Utils;
+import com.ibm.vicos.exceptions.CryptoException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
+import java.security.SignatureException;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.ibm.vicos.common.util.Utils.base64encoding;
@@ -36,6 +40,17 @@ public abstract class PKCryptoUtils extends CryptoUtils {
 
     private static final Logger LOG = LoggerFactory.getLogger(PKCryptoUtils.class);
 
+    private final EngineCache<PrivateKey, Signature> signers = new EngineCache<>(key -> {
+        Signature signature = Signature.getInstance(getSignatureAlgorithm());
+        signature.initSign(key);
+        return signature;
+    });
+    private final EngineCache<PublicKey, Signature> verifiers = new EngineCache<>(key -> {
+        Signature signature = Signature.getInstance(getSignatureAlgorithm());
+        signature.initVerify(key);
+        return signature;
+    });
+
     public abstract String getSignatureAlgorithm();
 
     public abstract String getPkiAlgorithm();
@@ -43,40 +58,47 @@ public abstract class PKCryptoUtils extends CryptoUtils {
     public abstract int getKeySize();
 
     @Override
-    public String sign(final Iterable<String> items, final ClientIdentifier clientIdentifier) {
+    public String sign(final Iterable<? extends Serializable> items, final ClientIdentifier clientIdentifier) {
         checkNotNull(items, "items");
         checkNotNull(clientIdentifier, "clientIdentifier");
-        try {
-            Signature signature = Signature.getInstance(getSignatureAlgorithm());
-            signature.initSign(clientIdentifier.getPrivateKey());
 
-            for (String item : items) {
-                signature.update(Utils.utf8decoding(item));
-            }
+        final byte[] input = CanonicalEncoding.encode(items);
+        final PrivateKey privateKey = checkNotNull(clientIdentifier.getPrivateKey(), "privateKey");
+        final Signature signature = signers.get(privateKey);
+        try {
+            signature.update(input);
             return base64encoding(signature.sign());
-        } catch (Exception e) {
-            LOG.error("Error while sign \"{}\"", items, e);
-            return null;
+        } catch (SignatureException e) {
+            signers.invalidate(privateKey);
+            throw new CryptoException("Failed to sign", e);
         }
     }
 
     @Override
-    public boolean verify(final String signature, final Iterable<String> items,
+    public boolean verify(final String signature, final Iterable<? extends Serializable> items,
                           final ClientIdentifier clientIdentifier) {
         checkNotNull(signature, "signature");
         checkNotNull(items, "items");
         checkNotNull(clientIdentifier, "clientIdentifier");
 
-        final PublicKey publicKey = clientIdentifier.getPublicKey();
+        final byte[] signatureBytes;
+        try {
+            signatureBytes = Utils.base64decoding(signature);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Malformed signature \"{}\"", signature);
+            return false;
+        }
+
+        final byte[] input = CanonicalEncoding.encode(items);
+        final PublicKey publicKey = checkNotNull(clientIdentifier.getPublicKey(), "publicKey");
+        final Signature sig = verifiers.get(publicKey);
         try {
-            Signature sig = Signature.getInstance(getSignatureAlgorithm());
-            sig.initVerify(publicKey);
-            for (String item : items) {
-                sig.update(Utils.utf8decoding(item));
-            }
-            return sig.verify(Utils.base64decoding(signature));
-        } catch (Exception e) {
-            LOG.error("Error while verify signature \"{}\"", signature, e);
+            sig.update(input);
+            return sig.verify(signatureBytes);
+        } catch (SignatureException e) {
+            // the encoding of the signature is invalid
+            verifiers.invalidate(publicKey);
+            LOG.warn("Malformed signature \"{}\"", signature, e);
             return false;
         }
     }
@@ -16,6 +16,8 @@
 
 package com.ibm.vicos.common.util;
 
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
 import com.google.common.io.BaseEncoding;
 import com.google.inject.Binder;
 import com.google.inject.Guice;
@@ -36,6 +38,7 @@ import com.ibm.vicos.common.OperationProcessor;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.config.DefaultClientModule;
 import com.ibm.vicos.config.GuiceInjector;
+import com.ibm.vicos.kvs.KVSDigest;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
@@ -43,6 +46,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.security.Key;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.crypto.spec.SecretKeySpec;
 
@@ -53,6 +58,8 @@ import akka.actor.Props;
 
 import static com.google.common.base.Preconditions.checkState;
 import static com.ibm.vicos.config.ConfigHelper.returnCryptoImplClazz;
+import static com.ibm.vicos.config.ConfigHelper.returnDigestImplClazz;
+import static com.ibm.vicos.config.ConfigHelper.returnHashFunction;
 import static com.ibm.vicos.config.ConfigHelper.returnOperationProcessorImpl;
 
 /**
@@ -86,100 +93,173 @@ public class ClientBuilder {
         Class<? extends OperationProcessor> operationProcessorClass = returnOperationProcessorImpl(opMode);
         LOG.info("Operation processor: {}", operationProcessorClass.getSimpleName());
 
+        String authenticator = config.getString("vicos.system.hashing.authenticator");
+        Class<? extends KVSDigest> digestClass = returnDigestImplClazz(authenticator);
+        LOG.info("Authenticator: {}", digestClass.getSimpleName());
+        final int treeSeed = config.getInt("vicos.system.hashing.tree-seed");
+
         boolean opRetryOnAbort = config.getBoolean("vicos.system.operation.retry-on-abort");
         LOG.info("Operation retry on abort: {}", opRetryOnAbort);
+        boolean readFastPath = config.getBoolean("vicos.system.operation.read-fast-path");
+        LOG.info("Read fast path: {}", readFastPath);
 
         String signatures = config.getString("vicos.system.signatures.type").toUpperCase();
-        checkState(signatures.equals("HMAC"), "Only HMAC supported right now!");
         Class<? extends CryptoUtils> cryptoUtilClass = returnCryptoImplClazz(signatures);
         LOG.info("Crypto: {}", cryptoUtilClass.getSimpleName());
 
-
-        // load shared key for hmac signatures
-        byte[] raw = BaseEncoding.base64().decode(config.getString("vicos.system.signatures.hmac.key"));
-        final Key sharedKey = new SecretKeySpec(raw, "AES");
-
-        // TODO create client
+        final HashFunction hashFunction = returnHashFunction(config.getString("vicos.system.hashing.algorithm"));
+        LOG.info("Hash function: {}", hashFunction);
 
         String clientId = config.getString("vicos.client.identifier");
-        ClientIdentifier clientIdentifier = ClientIdentifier.builder().setClientId(clientId).build();
-
-        final DummyClientLookupMap clientLookupMap = new DummyClientLookupMap(clientIdentifier);
+        final Key sharedKey;
+        final ClientIdentifier clientIdentifier;
+        final ClientLookupMap clientLookupMap;
+        if (signatures.equals("HMAC") || signatures.equals("NONE")) {
+            // load shared key for hmac signatures
+            sharedKey = signatures.equals("HMAC")
+                    ? new SecretKeySpec(BaseEncoding.base64().decode(config.getString("vicos.system.signatures.hmac.key")), "AES")
+                    : null;
+            clientIdentifier = ClientIdentifier.builder().setClientId(clientId).build();
+            clientLookupMap = new DummyClientLookupMap(clientIdentifier);
+        } else {
+            // load the key pair of this client and the public keys of all clients
+            sharedKey = null;
+            final Config keys = config.getConfig("vicos.system.signatures.keys");
+            final ClientIdentityLoader identityLoader = Guice.createInjector(binder -> binder.bind(CryptoUtils.class).to(cryptoUtilClass))
+                    .getInstance(ClientIdentityLoader.class);
+            clientIdentifier = identityLoader.loadClientIdentifier(clientId, keys);
+            checkState(clientIdentifier != null && clientIdentifier.getPublicKey() != null
+                    && clientIdentifier.getPrivateKey() != null, "Invalid key pair of client %s", clientId);
+            clientLookupMap = identityLoader.loadClientLookupMap(keys);
+            checkState(clientLookupMap != null, "Invalid public key in vicos.system.signatures.keys");
+            LOG.info("Public keys: {}", clientLookupMap.keySet());
+        }
         LOG.info("ClientId: {}", clientIdentifier.getClientId());
 
         final int maxOperationInProgress = config.getInt("vicos.system.flowcontrol.max-operation-in-progress");
+        final int maxInFlight = config.getInt("vicos.system.flowcontrol.max-operations-in-flight");
+        LOG.info("Operations in flight: {}", maxInFlight);
+
+        // signatures of delta and pending operations are verified in parallel, shared by all shards
+        final int verificationParallelism = config.getInt("vicos.system.signatures.verification-parallelism");
+        final ForkJoinPool verificationPool = new ForkJoinPool(verificationParallelism > 0
+                ? verificationParallelism : Runtime.getRuntime().availableProcessors());
+        final int parallelVerificationThreshold = config.getInt("vicos.system.signatures.parallel-verification-threshold");
+        LOG.info("Signature verification: {} threads for at least {} operations",
+                verificationPool.getParallelism(), parallelVerificationThreshold);
+
+        final int shards = config.getInt("vicos.system.sharding.shards");
+        checkState(shards > 0, "At least one shard is required");
+        LOG.info("Server shards: {}", shards);
+
+        // one client actor with its own protocol state per server shard
+        final List<ActorRef> clientRefs = Lists.newArrayList();
+        Injector injector = null;
+        for (int i = 0; i < shards; i++) {
+            final int shard = i;
+            final String clientActorName = shards == 1 ? clientIdentifier.getClientId()
+                    : clientIdentifier.getClientId() + "-shard-" + shard;
+            if (maxOperationInProgress > 0) {
+                final ActorRef throttler = system.actorOf(Props.create(GuiceInjector.class,
+                        Guice.createInjector(binder -> {
+                            binder.bind(ActorSelection.class)
+                                    .annotatedWith(Names.named("outActorSelection"))
+                                    .toInstance(remoteServerSelection);
+                            binder.bind(ActorSelection.class)
+                                    .annotatedWith(Names.named("inActorSelection"))
+                                    .toInstance(system.actorSelection("/user/" + clientActorName));
+                            binder.bind(Integer.class)
+                                    .annotatedWith(Names.named("maxOperationInProgress"))
+                                    .toInstance(maxOperationInProgress);
+                        }),
+                        ClientThrottleActor.class), "throttler-" + clientActorName);
+            }
+            final ActorSelection throttlerPath = system.actorSelection("/user/throttler-" + clientActorName);
+
+            final Module overrides = Modules.override(new DefaultClientModule()).with(new Module() {
+                @Override
+                public void configure(Binder binder) {
 
-        if (maxOperationInProgress > 0) {
-            final ActorRef throttler = system.actorOf(Props.create(GuiceInjector.class,
-                    Guice.createInjector(binder -> {
+                    if (maxOperationInProgress > 0) {
+                        // todo
                         binder.bind(ActorSelection.class)
-                                .annotatedWith(Names.named("outActorSelection"))
-                                .toInstance(remoteServerSelection);
+                                .annotatedWith(Names.named("remoteServerSelection"))
+                                .toInstance(throttlerPath);
+                    } else {
                         binder.bind(ActorSelection.class)
-                                .annotatedWith(Names.named("inActorSelection"))
-                                .toInstance(system.actorSelection("/user/" + clientIdentifier.getClientId()));
-                        binder.bind(Integer.class)
-                                .annotatedWith(Names.named("maxOperationInProgress"))
-                                .toInstance(maxOperationInProgress);
-                    }),
-                    ClientThrottleActor.class), "throttler-" + clientIdentifier.getClientId());
-        }
-        final ActorSelection throttlerPath = system.actorSelection("/user/throttler-" + clientIdentifier.getClientId());
-
-        final Module overrides = Modules.override(new DefaultClientModule()).with(new Module() {
-            @Override
-            public void configure(Binder binder) {
-
-                if (maxOperationInProgress > 0) {
-                    // todo
-                    binder.bind(ActorSelection.class)
-                            .annotatedWith(Names.named("remoteServerSelection"))
-                            .toInstance(throttlerPath);
-                } else {
-                    binder.bind(ActorSelection.class)
-                            .annotatedWith(Names.named("remoteServerSelection"))
-                            .toInstance(remoteServerSelection);
-                }
-
-                // enable commutative operations
-                binder.bind(OperationProcessor.class).to(operationProcessorClass);
-
-                binder.bind(ClientIdentifier.class)
-                        .annotatedWith(Names.named("clientIdentifier"))
-                        .toInstance(clientIdentifier);
-
-                binder.bind(Boolean.class)
-                        .annotatedWith(Names.named("retryOnAbort"))
-                        .toInstance(opRetryOnAbort);
-
-                if (signatures.equals("HMAC")) {
-                    binder.bind(Key.class)
-                            .annotatedWith(Names.named("sharedKey"))
-                            .toInstance(sharedKey);
+                                .annotatedWith(Names.named("remoteServerSelection"))
+                                .toInstance(remoteServerSelection);
+                    }
+
+                    // enable commutative operations
+                    binder.bind(OperationProcessor.class).to(operationProcessorClass);
+                    binder.bind(KVSDigest.class).to(digestClass);
+                    binder.bind(Integer.class)
+                            .annotatedWith(Names.named("treeSeed"))
+                            .toInstance(treeSeed);
+
+                    binder.bind(ActorSystem.class).toInstance(system);
+
+                    binder.bind(ClientIdentifier.class)
+                            .annotatedWith(Names.named("clientIdentifier"))
+                            .toInstance(clientIdentifier);
+
+                    binder.bind(Boolean.class)
+                            .annotatedWith(Names.named("retryOnAbort"))
+                            .toInstance(opRetryOnAbort);
+
+                    if (sharedKey != null) {
+                        binder.bind(Key.class)
+                                .annotatedWith(Names.named("sharedKey"))
+                                .toInstance(sharedKey);
+                    }
+                    binder.bind(CryptoUtils.class).to(cryptoUtilClass);
+                    binder.bind(HashFunction.class)
+                            .annotatedWith(Names.named("hashFunction"))
+                            .toInstance(hashFunction);
+
+                    binder.bind(ClientLookupMap.class)
+                            .annotatedWith(Names.named("clientLookupMap"))
+                            .toInstance(clientLookupMap);
+
+                    binder.bind(Integer.class)
+                            .annotatedWith(Names.named("maxOperationInProgress"))
+                            .toInstance(maxOperationInProgress);
+
+                    binder.bind(Integer.class)
+                            .annotatedWith(Names.named("maxInFlight"))
+                            .toInstance(maxInFlight);
+
+                    binder.bind(Integer.class)
+                            .annotatedWith(Names.named("shard"))
+                            .toInstance(shard);
+
+                    binder.bind(Boolean.class)
+                            .annotatedWith(Names.named("readFastPath"))
+                            .toInstance(readFastPath);
+
+                    binder.bind(ForkJoinPool.class)
+                            .annotatedWith(Names.named("verificationPool"))
+                            .toInstance(verificationPool);
+
+                    binder.bind(Integer.class)
+                            .annotatedWith(Names.named("parallelVerificationThreshold"))
+                            .toInstance(parallelVerificationThreshold);
+
+                    binder.bind(ClientProtocol.class).to(ClientProtocolImpl.class);
                 }
-                binder.bind(CryptoUtils.class).to(cryptoUtilClass);
+            });
 
-                binder.bind(ClientLookupMap.class)
-                        .annotatedWith(Names.named("clientLookupMap"))
-                        .toInstance(clientLookupMap);
+            injector = Guice.createInjector(overrides);
 
-                binder.bind(Integer.class)
-                        .annotatedWith(Names.named("maxOperationInProgress"))
-                        .toInstance(maxOperationInProgress);
-
-                binder.bind(ClientProtocol.class).to(ClientProtocolImpl.class);
-            }
-        });
-
-        Injector injector = Guice.createInjector(overrides);
-
-        final ActorRef clientRef = system.actorOf(
-                Props.create(GuiceInjector.class, injector, ClientActor.class),
-                clientIdentifier.getClientId()
-        );
+            clientRefs.add(system.actorOf(
+                    Props.create(GuiceInjector.class, injector, ClientActor.class),
+                    clientActorName
+            ));
+        }
 
         return injector.getInstance(VICOSClient.VICOSClientKVSAPIFactory.class)
-                .create(clientRef, clientIdentifier);
+                .create(clientRefs, clientIdentifier);
 
     }
 }
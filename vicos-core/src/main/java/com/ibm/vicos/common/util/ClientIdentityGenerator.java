@@ -19,14 +19,24 @@ package com.ibm.vicos.common.util;
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.DSACryptoUtilsImpl;
+import com.ibm.vicos.common.crypto.PKCryptoUtils;
 import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.ibm.vicos.config.ConfigHelper.returnCryptoImplClazz;
+
 public class ClientIdentityGenerator {
 
+    private static final Logger LOG = LoggerFactory.getLogger(ClientIdentityGenerator.class);
+
     public static final String RSA_PUBLIC_KEY = "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA28VHAL3vN/eTO31eb44hQ4YBbUCSDIBtLOZroMVRDErEfXlpSqZgbs4YvyRRYTAGtnyGpeCTiVCDofIiRGW8kpCLBgeUSWkA8DE260Wz9KtN1RwpK83cRwCeYQXc1ozuUBFTYxmxST+un2x6b8kG88ZdQXwhtpB0LLRUJNLNNyNeu+7PainkKVBWJUmIF9k8ZpEtzHvwW0nnFH8+ceYxsfavES5oN6SoJk5FINCqo3r2kd3f5ZHjem5XsGTQbEw6eqVAOkhnESbc3/g1Mj6tGyPbVOd5KrLWXXkzHQCERiiIQVUZh8E7bflKzvI+UR3VhMsAjb2riJk6YYdb0sLadQIDAQAB";
     public static final String RSA_PRIVATE_KEY = "MIIEvwIBADANBgkqhkiG9w0BAQEFAASCBKkwggSlAgEAAoIBAQDbxUcAve8395M7fV5vjiFDhgFtQJIMgG0s5mugxVEMSsR9eWlKpmBuzhi/JFFhMAa2fIal4JOJUIOh8iJEZbySkIsGB5RJaQDwMTbrRbP0q03VHCkrzdxHAJ5hBdzWjO5QEVNjGbFJP66fbHpvyQbzxl1BfCG2kHQstFQk0s03I1677s9qKeQpUFYlSYgX2TxmkS3Me/BbSecUfz5x5jGx9q8RLmg3pKgmTkUg0KqjevaR3d/lkeN6blewZNBsTDp6pUA6SGcRJtzf+DUyPq0bI9tU53kqstZdeTMdAIRGKIhBVRmHwTtt+UrO8j5RHdWEywCNvauImTphh1vSwtp1AgMBAAECggEBAK0O2Q2dgz2IKBllbLLdshXw9Tip6xgLHW2I+OG930eVrMq9i4ssHq3CfzwtBiRI5FBZGNKQWL19eFpTSGah0m97gO47k6qHFCUQLBXyanXVW1Hgfg8vaTFELHNsYW1Vxuen7QkRl0h97C1AB9306BOYdaD2dbnEYKc/TS8+DDlInBXOu1GFgvEpxXH6ocDQdgmGkWm7hx5OPaugM+SDiaDNyggdZqMoMxDudfy7iVuZmQSDVPGLCGXK2AUwoz6r7Wc3065nMBt+vCEHasBvWOr/0Lz85blKio18WCC9pRpwG9WPgUA+LFlY4B//oO6zuJ4qYh+dCelpEBD0ciQfZYECgYEA9xhuaElr6RjbhXvwuGVbAe0+4URzgFSQogGoMqhQHBFFbEyISkWTbWambXXgpc0XQldVAvn52BlDwfXfT+GFzPZM6to4TxdlkrDwh7Tqm2Nuv9x2hessbm0zR6S+x0JtUbaz4n32ABlbkOSVfpXUTeOhqZFyJV/kDejQ6RMfWyECgYEA47DDF5LzOaN0SAJQdslqMD7LMDM48Vldb1kkTec+TTRG86M+BpGQszhoegBXT/WpPj73tum9IUQ112GsqeRP/7REmIzT4nzE9R7+pophEGvSb3vOaKENrS7Yoq2PKJ+uOZWAaqoEoewismVYjXq6JybrEDpe6Y06kONh1x9zCNUCgYEA2QAwvg904HH/H7xYDGiewxNqfIUT9mjN2CkiYNKl//A/CrwvmSJ/Nb3HfSvfjVyPB6kQtJt6Coktk2JtqoaBbh4EMOBSQUtn3arcoiGFQ8/QDFj+EeAV1ii6tzl8fhvdS7zrP4alizK50oacr12/5GN7ryJXn3EWJA0JoxczG2ECgYEAqN1mw2wUAXJtgh5dSMv2elOH5HaIy86IUlWdbD2NYjrcSEOQc9SvqYuzSJBKMR4z59tRYpIV178740IoiVOv1SgAG9eOKZJ5jIXxPNiyRjiBOHdszQJtHzz4JCZuXyWWVFTBidoQV3rG/OHW/A7CUtk1SrLPw40fm2dYH/DOIwUCgYAMFxQWctct/F6NcBKCljuof6bOMFs4SzsjIjW2t2KhjwKhfOESOzcy/jap9XlN+c9T4Gb/yqW5Pe7Km2iJ6/eLA30oDOS6XLkWaQ0D+k2SrixHaNqbJ5pp1Mk9o9Z67zNno9EIjDmhFAw5ENGn2UPOJ4MqDopKJwzvZoYQCkAOxA==";
 
@@ -35,6 +45,20 @@ public class ClientIdentityGenerator {
 
     private final static AtomicLong clientInstanceCounter = new AtomicLong(0);
 
+    /**
+     * Prints a new key pair of a client in the format of vicos.system.signatures.keys, usage:
+     * ClientIdentityGenerator (RSA|DSA|ECDSA|ED25519) clientId
+     */
+    public static void main(String[] args) throws Exception {
+        checkArgument(args.length == 2, "Usage: ClientIdentityGenerator (RSA|DSA|ECDSA|ED25519) clientId");
+        final Class<? extends CryptoUtils> clazz = returnCryptoImplClazz(args[0]);
+        checkArgument(PKCryptoUtils.class.isAssignableFrom(clazz), "Not a public-key signature type: %s", args[0]);
+        final CryptoUtils cryptoUtils = clazz.getDeclaredConstructor().newInstance();
+        final KeyPair keyPair = cryptoUtils.generateKeyPair();
+        LOG.info("{}.public = \"{}\"", args[1], Utils.base64encoding(keyPair.getPublic().getEncoded()));
+        LOG.info("{}.private = \"{}\"", args[1], Utils.base64encoding(keyPair.getPrivate().getEncoded()));
+    }
+
     public static ClientIdentifier generate(String prefix, Class<? extends CryptoUtils> clazz) {
         if (clazz.equals(RSACryptoUtilsImpl.class)) {
             return generateRSA(prefix);
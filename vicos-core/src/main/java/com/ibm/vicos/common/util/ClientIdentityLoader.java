@@ -16,11 +16,11 @@
 
 package com.ibm.vicos.common.util;
 
-import com.google.common.base.CharMatcher;
 import com.google.common.collect.Sets;
 import com.google.inject.Inject;
 
 import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigValue;
@@ -40,6 +40,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class ClientIdentityLoader {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientIdentityLoader.class);
+    private static final String PUBLIC_KEY_SUFFIX = ".public";
     private final CryptoUtils cryptoUtils;
 
     @Inject
@@ -50,7 +51,7 @@ public class ClientIdentityLoader {
     public ClientIdentifier loadClientIdentifier(final String clientID, final Config config) {
         checkNotNull(clientID, "clientID");
         checkNotNull(config, "config");
-        String pubKeyData = config.getString(clientID + ".public");
+        String pubKeyData = config.getString(clientID + PUBLIC_KEY_SUFFIX);
         String privateKeyData = config.getString(clientID + ".private");
 
         try {
@@ -68,13 +69,13 @@ public class ClientIdentityLoader {
 
         // filter public keys
         Set<Map.Entry<String, ConfigValue>> publics = Sets.filter(config.entrySet(),
-                input -> input != null && input.getKey().endsWith(".public")
+                input -> input != null && input.getKey().endsWith(PUBLIC_KEY_SUFFIX)
         );
 
         // create a SimpleClientIdentifier for each public key
         for (Map.Entry<String, ConfigValue> p : publics) {
             try {
-                String aClientID = CharMatcher.anyOf(".public").trimTrailingFrom(p.getKey());
+                String aClientID = p.getKey().substring(0, p.getKey().length() - PUBLIC_KEY_SUFFIX.length());
                 String somePubKeyData = String.valueOf(p.getValue().unwrapped());
 
                 LOG.debug("read public key for {}", aClientID);
@@ -88,4 +89,17 @@ public class ClientIdentityLoader {
         }
         return publicKeyDirectory;
     }
+
+    /**
+     * @return identifiers with the public keys of all clients in the directory, null if a key is invalid
+     */
+    public ClientLookupMap loadClientLookupMap(final Config config) {
+        final ConcurrentMap<ClientIdentifier, PublicKey> publicKeyDirectory = loadPublicKeyDirectory(config);
+        if (publicKeyDirectory == null) {
+            return null;
+        }
+        final ClientLookupMap clientLookupMap = new ClientLookupMap();
+        publicKeyDirectory.keySet().forEach(c -> clientLookupMap.put(c.getClientId(), c));
+        return clientLookupMap;
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.util;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.ibm.vicos.config.ConfigHelper.returnHashFunction;
+
+/**
+ * Measures the options of vicos.system.hashing.algorithm on the inputs the protocol hashes: hash chain values,
+ * UUIDs of PUT operations with values of different sizes and streamed objects. Usage:
+ * HashBenchmark [seconds per measurement]
+ */
+public class HashBenchmark {
+
+    private static final List<String> ALGORITHMS = ImmutableList.of("SHA1", "SHA256", "SHA512", "BLAKE2B");
+    private static final List<Integer> VALUE_SIZES = ImmutableList.of(64, 1024, 16 * 1024);
+    private static final int OBJECT_SIZE = 1 << 20;
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        final long nanos = TimeUnit.SECONDS.toNanos(args.length > 0 ? Long.parseLong(args[0]) : 1);
+        final byte[] object = new byte[OBJECT_SIZE];
+        CryptoUtils.getSecureRandom().nextBytes(object);
+
+        System.out.printf("%-8s %12s", "", "chain/s");
+        VALUE_SIZES.forEach(size -> System.out.printf(" %12s", "uuid" + size + "/s"));
+        System.out.printf(" %10s%n", "MB/s");
+
+        for (String algorithm : ALGORITHMS) {
+            final HashFunction hashFunction = returnHashFunction(algorithm);
+            final CryptoUtils cryptoUtils = new RSACryptoUtilsImpl();
+            cryptoUtils.setHashFunction(hashFunction);
+
+            final Operation chained = operation(cryptoUtils, "value");
+            final String prevHash = cryptoUtils.hash(ImmutableList.of(CryptoUtils.INIT_HASH));
+            System.out.printf("%-8s %12.0f", algorithm, measure(() -> cryptoUtils.nextHashChainValue(prevHash, chained), nanos));
+            for (int size : VALUE_SIZES) {
+                final Operation put = operation(cryptoUtils, Strings.repeat("A", size));
+                System.out.printf(" %12.0f", measure(() -> cryptoUtils.generateOperationUUID(put, put.getClientId()), nanos));
+            }
+            System.out.printf(" %10.1f%n", measure(() -> hashFunction.hashBytes(object), nanos) * OBJECT_SIZE / 1e6);
+        }
+    }
+
+    private static Operation operation(CryptoUtils cryptoUtils, String value) {
+        final Operation operation = Operation.newBuilder()
+                .setOpCode(OpCode.PUT)
+                .setKey("container/object")
+                .setValue(value)
+                .setClientId("Client-001")
+                .setSequenceNumber(42)
+                .build();
+        return operation.toBuilder().setUuid(cryptoUtils.generateOperationUUID(operation, operation.getClientId())).build();
+    }
+
+    /**
+     * @return executions per second, measured after a warm-up of the same duration
+     */
+    private static double measure(Supplier<?> task, long nanos) {
+        run(task, nanos);
+        return run(task, nanos);
+    }
+
+    private static double run(Supplier<?> task, long nanos) {
+        final long start = System.nanoTime();
+        long executions = 0;
+        long elapsed;
+        do {
+            // consume the results so that the computation is not eliminated
+            sink += task.get().hashCode();
+            executions++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < nanos);
+        return executions * 1e9 / elapsed;
+    }
+}
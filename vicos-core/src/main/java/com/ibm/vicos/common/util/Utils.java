@@ -32,6 +32,7 @@ import java.util.UUID;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class Utils {
@@ -44,6 +45,13 @@ public class Utils {
     private static Random random;
 
     public static void backoffSleep(int attempt) {
+        sleep(backoffDelay(attempt));
+    }
+
+    /**
+     * @return random delay in ms between 0 and 1.5^attempt - 1
+     */
+    public static int backoffDelay(int attempt) {
         if (random == null) {
             random = new Random(System.currentTimeMillis());
         }
@@ -52,10 +60,9 @@ public class Utils {
         int sleepy = 1;
         int min = 0;
         int max = (int) Math.pow(backoff, attempt) - 1;
-        int sleepTime = (random.nextInt((max - min) + 1) + min) * sleepy;
-        LOG.debug("Sleep {} ms [{},{}]", sleepTime, min, max);
-
-        sleep(sleepTime);
+        int delay = (random.nextInt((max - min) + 1) + min) * sleepy;
+        LOG.debug("Backoff {} ms [{},{}]", delay, min, max);
+        return delay;
     }
 
     public static void sleep(long delayMillis) {
@@ -101,6 +108,16 @@ public class Utils {
         return container + FLAT_KEY_SEPARATOR + name;
     }
 
+    /**
+     * Maps a key to one of the server shards, all keys of a container map to the same shard.
+     */
+    public static int shardOf(String key, int shards) {
+        checkArgument(shards > 0, "shards must be positive");
+        int separator = key.indexOf(FLAT_KEY_SEPARATOR);
+        String container = separator < 0 ? key : key.substring(0, separator);
+        return Hashing.consistentHash(Hashing.murmur3_32().hashString(container, Charsets.UTF_8), shards);
+    }
+
     public static String transformBlobName(String name, String prefix, String postfix) {
         return prefix + NAME_EXTENSION_SEPARATOR + name + NAME_EXTENSION_SEPARATOR + postfix;
     }
@@ -16,14 +16,23 @@
 
 package com.ibm.vicos.config;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
 import com.ibm.vicos.common.OperationProcessor;
+import com.ibm.vicos.common.crypto.Blake2b;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.DSACryptoUtilsImpl;
 import com.ibm.vicos.common.crypto.DummyCryptoUtilsImpl;
+import com.ibm.vicos.common.crypto.ECDSACryptoUtilsImpl;
+import com.ibm.vicos.common.crypto.Ed25519CryptoUtilsImpl;
 import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
 import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
 import com.ibm.vicos.kvs.KVSCommuteOperationProcessor;
 import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSDigest;
+import com.ibm.vicos.kvs.MerkleKVSDigest;
+import com.ibm.vicos.kvs.MultisetKVSDigest;
 
 /**
  * Created by bur on 02/10/15.
@@ -41,6 +50,18 @@ public class ConfigHelper {
         }
     }
 
+    public static Class<? extends KVSDigest> returnDigestImplClazz(String authenticator) {
+        authenticator = authenticator.toUpperCase();
+        switch (authenticator) {
+            case "MERKLE":
+                return MerkleKVSDigest.class;
+            case "MULTISET":
+                return MultisetKVSDigest.class;
+            default:
+                return MerkleKVSDigest.class;
+        }
+    }
+
     public static Class<? extends CryptoUtils> returnCryptoImplClazz(String signatures) {
         signatures = signatures.toUpperCase();
         switch (signatures) {
@@ -48,6 +69,10 @@ public class ConfigHelper {
                 return RSACryptoUtilsImpl.class;
             case "DSA":
                 return DSACryptoUtilsImpl.class;
+            case "ECDSA":
+                return ECDSACryptoUtilsImpl.class;
+            case "ED25519":
+                return Ed25519CryptoUtilsImpl.class;
             case "HMAC":
                 return HMacCryptoUtilsImpl.class;
             case "NONE":
@@ -57,4 +82,20 @@ public class ConfigHelper {
         }
     }
 
+    public static HashFunction returnHashFunction(String algorithm) {
+        algorithm = algorithm.toUpperCase();
+        switch (algorithm) {
+            case "SHA1":
+                return Hashing.sha1();
+            case "SHA256":
+                return Hashing.sha256();
+            case "SHA512":
+                return Hashing.sha512();
+            case "BLAKE2B":
+                return Blake2b.blake2b256();
+            default:
+                throw new IllegalArgumentException("Unknown hash algorithm: " + algorithm);
+        }
+    }
+
 }
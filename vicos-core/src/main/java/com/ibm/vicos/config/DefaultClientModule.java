@@ -27,28 +27,31 @@ import com.ibm.vicos.client.VICOSClient;
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.OperationProcessor;
 import com.ibm.vicos.common.Operations.Status;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.StorageAPI;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
 import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSDigest;
+import com.ibm.vicos.kvs.MerkleKVSDigest;
 
 import java.util.Map;
-import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class DefaultClientModule implements Module {
 
     @Override
     public void configure(Binder binder) {
-        binder.bind(new TypeLiteral<NavigableMap<Long, String>>() {
+        binder.bind(new TypeLiteral<SequenceBuffer<String>>() {
         })
                 .annotatedWith(Names.named("hashChainMap"))
-                .toInstance(Maps.<Long, String>newTreeMap());
+                .toInstance(new SequenceBuffer<>());
 
-        binder.bind(new TypeLiteral<NavigableMap<Long, Status>>() {
+        binder.bind(new TypeLiteral<SequenceBuffer<Status>>() {
         })
                 .annotatedWith(Names.named("statusMap"))
-                .toInstance(Maps.<Long, Status>newTreeMap());
+                .toInstance(new SequenceBuffer<>());
 
         binder.bind(new TypeLiteral<Map<String, ClientIdentifier>>() {
         })
@@ -59,10 +62,36 @@ public class DefaultClientModule implements Module {
                 .annotatedWith(Names.named("lastSequenceNumber"))
                 .toInstance(new AtomicLong(0));
 
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("maxInFlight"))
+                .toInstance(1);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("shard"))
+                .toInstance(0);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("readFastPath"))
+                .toInstance(false);
+
+        binder.bind(ForkJoinPool.class)
+                .annotatedWith(Names.named("verificationPool"))
+                .toInstance(ForkJoinPool.commonPool());
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("parallelVerificationThreshold"))
+                .toInstance(Integer.MAX_VALUE);
+
         binder.bind(CryptoUtils.class).to(RSACryptoUtilsImpl.class);
 
         binder.bind(OperationProcessor.class).to(KVSCompatibleOperationProcessor.class);
 
+        binder.bind(KVSDigest.class).to(MerkleKVSDigest.class);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("treeSeed"))
+                .toInstance(0);
+
         binder.install(new FactoryModuleBuilder()
                 .implement(StorageAPI.class, VICOSClient.class)
                 .build(VICOSClient.VICOSClientKVSAPIFactory.class));
@@ -16,9 +16,9 @@
 
 package com.ibm.vicos.config;
 
-import com.google.common.collect.Maps;
 import com.google.inject.Binder;
 import com.google.inject.Module;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
 
 import com.ibm.vicos.common.OperationProcessor;
@@ -26,7 +26,13 @@ import com.ibm.vicos.common.State;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
 import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.HeapValueStore;
+import com.ibm.vicos.kvs.KVSDigest;
 import com.ibm.vicos.kvs.KVSState;
+import com.ibm.vicos.kvs.MerkleKVSDigest;
+import com.ibm.vicos.kvs.ValueStore;
+import com.ibm.vicos.server.NoopServerJournal;
+import com.ibm.vicos.server.ServerJournal;
 import com.ibm.vicos.server.ServerProtocol;
 import com.ibm.vicos.server.ServerProtocolImpl;
 
@@ -44,12 +50,22 @@ public class DefaultServerModule implements Module {
                 .annotatedWith(Names.named("lastAppliedSeqNo"))
                 .toInstance(new AtomicLong(0));
 
-        binder.bind(State.class).toInstance(new KVSState(Maps.newTreeMap()));
+        binder.bind(ValueStore.class).to(HeapValueStore.class);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("treeSeed"))
+                .toInstance(0);
+
+        binder.bind(State.class).to(KVSState.class).in(Singleton.class);
 
         binder.bind(OperationProcessor.class).to(KVSCompatibleOperationProcessor.class);
 
+        binder.bind(KVSDigest.class).to(MerkleKVSDigest.class);
+
         binder.bind(CryptoUtils.class).to(RSACryptoUtilsImpl.class);
 
         binder.bind(ServerProtocol.class).to(ServerProtocolImpl.class);
+
+        binder.bind(ServerJournal.class).to(NoopServerJournal.class);
     }
 }
@@ -33,11 +33,15 @@ public class KVSCommuteOperationProcessor extends KVSOperationProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(KVSCommuteOperationProcessor.class);
 
-    @Inject
     public KVSCommuteOperationProcessor(CryptoUtils cryptoUtils) {
         super(cryptoUtils);
     }
 
+    @Inject
+    public KVSCommuteOperationProcessor(KVSDigest digest) {
+        super(digest);
+    }
+
     /**
      * Implements commutativity
      */
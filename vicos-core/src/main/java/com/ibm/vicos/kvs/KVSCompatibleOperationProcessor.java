@@ -31,11 +31,15 @@ public class KVSCompatibleOperationProcessor extends KVSOperationProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(KVSCompatibleOperationProcessor.class);
 
-    @Inject
     public KVSCompatibleOperationProcessor(CryptoUtils cryptoUtils) {
         super(cryptoUtils);
     }
 
+    @Inject
+    public KVSCompatibleOperationProcessor(KVSDigest digest) {
+        super(digest);
+    }
+
     /**
      * Implements compatible operations
      */
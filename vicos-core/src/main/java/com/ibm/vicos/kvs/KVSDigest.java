@@ -0,0 +1,80 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.StorageAPI;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import java.util.Set;
+
+/**
+ * Scheme used to compute the authenticator value of a {@link KVSState} and the auxiliary data needed to verify
+ * operations executed on it.
+ */
+public interface KVSDigest {
+
+    /**
+     * Server side: returns a copy-on-write view of the state, operations executed on the view do not modify the
+     * state.
+     */
+    Prover prover(KVSState state);
+
+    /**
+     * Server side: like {@link #prover(KVSState)} for a client keeping the state of the base authenticator value,
+     * only the given keys changed since.
+     */
+    default Prover prover(KVSState state, String base, Set<String> changedKeys) {
+        return prover(state);
+    }
+
+    /**
+     * Client side: rebuilds the state from the auxiliary data and checks it against the authenticator value.
+     *
+     * @throws IntegrityException if the auxiliary data does not match the authenticator value
+     */
+    Verifier verifier(AuxiliaryData auxiliaryData, String authenticatorValue) throws IntegrityException;
+
+    /**
+     * Client side: true if the states of verified authenticator values are kept, see
+     * {@link #prover(KVSState, String, Set)}
+     */
+    default boolean isIncremental() {
+        return false;
+    }
+
+    interface Prover extends StorageAPI<String, String> {
+
+        /**
+         * @return auxiliary data of the original state which allows to verify all operations executed on the view
+         */
+        AuxiliaryData toAuxiliaryData();
+    }
+
+    interface Verifier extends StorageAPI<String, String> {
+
+        /**
+         * @return authenticator value of the state after all operations executed on the view
+         */
+        String digest();
+
+        /**
+         * @return auxiliary data of the state after all operations executed on the view
+         */
+        AuxiliaryData toAuxiliaryData();
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.ibm.vicos.kvs;
 
-import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 
 import com.ibm.vicos.common.ADS.Authenticator;
@@ -26,92 +25,126 @@ import com.ibm.vicos.common.OperationProcessor;
 import com.ibm.vicos.common.Operations;
 import com.ibm.vicos.common.Operations.Operation;
 import com.ibm.vicos.common.Operations.Result;
+import com.ibm.vicos.common.StorageAPI;
 import com.ibm.vicos.common.crypto.CryptoUtils;
-import com.ibm.vicos.exceptions.IntegrityException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.ibm.vicos.common.Operations.OpCode.BATCH;
 import static com.ibm.vicos.common.Operations.OpCode.DELETE;
 import static com.ibm.vicos.common.Operations.OpCode.GET;
 import static com.ibm.vicos.common.Operations.OpCode.LIST;
 import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.Operations.Status.SUCCESS;
 
 public abstract class KVSOperationProcessor extends OperationProcessor<KVSState> {
 
     private static final Logger LOG = LoggerFactory.getLogger(KVSOperationProcessor.class);
-    private final CryptoUtils cryptoUtils;
+    private final KVSDigest digest;
+    private Authenticator verifiedAuthenticator = Authenticator.getDefaultInstance();
 
-    @Inject
     public KVSOperationProcessor(CryptoUtils cryptoUtils) {
-        this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
+        this(new MerkleKVSDigest(cryptoUtils));
+    }
+
+    @Inject
+    public KVSOperationProcessor(KVSDigest digest) {
+        this.digest = checkNotNull(digest, "digest");
     }
 
     public QueryResult query(KVSState state, List<Operation> operations) {
-        final KVSState tempState = state.clone();
+        // speculative execution on a copy-on-write view of the state, the view is dropped once the auxiliary data
+        // has been extracted
+        final KVSDigest.Prover view = digest.prover(state);
         return QueryResult.builder()
-                .setResult(execute(tempState, operations))
-                .setAuxiliaryData(state.toAuxiliaryData())
+                .setResult(execute(view, operations))
+                .setAuxiliaryData(view.toAuxiliaryData())
                 .build();
     }
 
-    private Result execute(KVSState state, List<Operation> operations) {
+    @Override
+    public QueryResult query(KVSState state, List<Operation> operations, Authenticator base, List<Operation> applied) {
+        final Set<String> changedKeys = applied.stream()
+                .filter(o -> o.getStatus() == SUCCESS)
+                .flatMap(KVSOperationProcessor::unbatch)
+                .filter(o -> o.getOpCode() == PUT || o.getOpCode() == DELETE)
+                .map(Operation::getKey)
+                .collect(Collectors.toSet());
+        final KVSDigest.Prover view = digest.prover(state, base.getValue(), changedKeys);
+        return QueryResult.builder()
+                .setResult(execute(view, operations))
+                .setAuxiliaryData(view.toAuxiliaryData())
+                .build();
+    }
+
+    private Result execute(StorageAPI<String, String> state, List<Operation> operations) {
         checkArgument(!operations.isEmpty(), "No operations to execute");
-        return operations.stream().map(o -> {
-            Result.Builder resultBuilder = Result.newBuilder();
-            switch (o.getOpCode()) {
-                case PUT: {
-                    state.put(o.getKey(), o.getValue());
-                    resultBuilder.setOpCode(PUT);
-                    break;
-                }
-                case GET: {
-                    resultBuilder.setOpCode(GET);
-                    try {
-                        String result = state.get(o.getKey());
-                        resultBuilder.addValues(result);
-                    } catch (KeyNotFoundException e) {
-                        resultBuilder.setResultType(Operations.ResultType.KEY_NOT_FOUND);
-                    }
-                    break;
+        return operations.stream()
+                .map(o -> execute(state, o))
+                .reduce((prev, next) -> next).get().build();
+    }
+
+    private Result.Builder execute(StorageAPI<String, String> state, Operation o) {
+        Result.Builder resultBuilder = Result.newBuilder();
+        switch (o.getOpCode()) {
+            case PUT: {
+                state.put(o.getKey(), o.getValue());
+                resultBuilder.setOpCode(PUT);
+                break;
+            }
+            case GET: {
+                resultBuilder.setOpCode(GET);
+                try {
+                    String result = state.get(o.getKey());
+                    resultBuilder.addValues(result);
+                } catch (KeyNotFoundException e) {
+                    resultBuilder.setResultType(Operations.ResultType.KEY_NOT_FOUND);
                 }
-                case DELETE: {
-                    resultBuilder.setOpCode(DELETE);
-                    try {
-                        String result = state.remove(o.getKey());
-                        resultBuilder.addValues(result);
-                    } catch (KeyNotFoundException e) {
-                        resultBuilder.setResultType(Operations.ResultType.KEY_NOT_FOUND);
-                    }
-                    break;
+                break;
+            }
+            case DELETE: {
+                resultBuilder.setOpCode(DELETE);
+                try {
+                    String result = state.remove(o.getKey());
+                    resultBuilder.addValues(result);
+                } catch (KeyNotFoundException e) {
+                    resultBuilder.setResultType(Operations.ResultType.KEY_NOT_FOUND);
                 }
-                case LIST: {
-                    Iterable<String> result = state.list();
-                    resultBuilder.setOpCode(LIST).addAllValues(result);
-                    break;
+                break;
+            }
+            case LIST: {
+                Iterable<String> result = state.list();
+                resultBuilder.setOpCode(LIST).addAllValues(result);
+                break;
+            }
+            case BATCH: {
+                resultBuilder.setOpCode(BATCH);
+                for (Operation batched : o.getOperationsList()) {
+                    checkArgument(isBatchable(batched), "Operation can not be batched: %s", batched.getOpCode());
+                    resultBuilder.addResults(execute(state, batched));
                 }
-                default:
-                    throw new RuntimeException("Unknown operation");
+                break;
             }
-            return resultBuilder;
-        }).reduce((prev, next) -> next).get().build();
+            default:
+                throw new RuntimeException("Unknown operation");
+        }
+        return resultBuilder;
     }
 
     public AuthExecResult authexec(List<Operation> operations, Authenticator authenticator, Result result, AuxiliaryData auxiliaryData) {
         LOG.trace("Authexec {}, {}, {}", operations, authenticator, result);
-        TreeMap<String, String> data = Maps.newTreeMap();
-        data.putAll(auxiliaryData.getData());
-        KVSState state = new KVSState(data);
-
         // verify current state
-        String a = cryptoUtils.hash(state.items());
-        if (!authenticator.getValue().equals(a)) {
-            throw new IntegrityException("Integrity violation! Expected: " + authenticator.getValue() + " but found: " + a);
+        KVSDigest.Verifier state = digest.verifier(auxiliaryData, authenticator.getValue());
+        if (digest.isIncremental()) {
+            verifiedAuthenticator = authenticator;
         }
 
         Result ourResult = execute(state, operations);
@@ -124,7 +157,7 @@ public abstract class KVSOperationProcessor extends OperationProcessor<KVSState>
         long sequenceNumber = operations.stream().reduce((prev, next) -> next).get().getSequenceNumber();
 
         Authenticator newAuthenticator = Authenticator.newBuilder()
-                .setValue(cryptoUtils.hash(state.items()))
+                .setValue(state.digest())
                 .setSequenceNumber(sequenceNumber)
                 .build();
 
@@ -135,6 +168,11 @@ public abstract class KVSOperationProcessor extends OperationProcessor<KVSState>
                 .build();
     }
 
+    @Override
+    public Authenticator verifiedAuthenticator() {
+        return verifiedAuthenticator;
+    }
+
     public KVSState refresh(KVSState state, Operation operation, AuxiliaryData auxiliaryData) {
         switch (operation.getOpCode()) {
             case GET: {
@@ -159,6 +197,13 @@ public abstract class KVSOperationProcessor extends OperationProcessor<KVSState>
             case LIST: {
                 return state;
             }
+            case BATCH: {
+                KVSState newState = state;
+                for (Operation batched : operation.getOperationsList()) {
+                    newState = refresh(newState, batched, auxiliaryData);
+                }
+                return newState;
+            }
             default: {
                 throw new RuntimeException("Unknown operation");
             }
@@ -167,10 +212,33 @@ public abstract class KVSOperationProcessor extends OperationProcessor<KVSState>
 
     public boolean isCompatible(List<Operation> listOthers, Operation currentOperation) {
         LOG.trace("Compatibility check: mu: {} u: {}", listOthers, currentOperation);
-        return listOthers.isEmpty() || listOthers.stream().allMatch(o -> isCompatible(o, currentOperation));
+        return listOthers.isEmpty() || listOthers.stream().allMatch(o -> unbatch(o).allMatch(
+                other -> unbatch(currentOperation).allMatch(current -> isCompatible(other, current))));
     }
 
     public boolean isUpdateOperation(Operation operation) {
-        return operation.getOpCode() == PUT || operation.getOpCode() == DELETE;
+        return unbatch(operation).anyMatch(o -> o.getOpCode() == PUT || o.getOpCode() == DELETE);
+    }
+
+    /**
+     * Batches must not be nested, the operation UUID only covers the operations of one batch level.
+     */
+    public boolean isValid(Operation operation) {
+        return operation.getOpCode() != BATCH
+                || operation.getOperationsList().stream().allMatch(KVSOperationProcessor::isBatchable);
+    }
+
+    /**
+     * @return true if the operation may be part of a {@link Operations.OpCode#BATCH}
+     */
+    public static boolean isBatchable(Operation operation) {
+        return operation.getOpCode() == PUT || operation.getOpCode() == GET || operation.getOpCode() == DELETE;
+    }
+
+    /**
+     * @return the operations of a batch, or the operation itself
+     */
+    private static Stream<Operation> unbatch(Operation operation) {
+        return operation.getOpCode() == BATCH ? operation.getOperationsList().stream() : Stream.of(operation);
     }
 }
@@ -18,92 +18,117 @@ package com.ibm.vicos.kvs;
 
 import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import com.ibm.vicos.common.ADS.AuxiliaryData;
 import com.ibm.vicos.common.KeyNotFoundException;
 import com.ibm.vicos.common.State;
 import com.ibm.vicos.common.StorageAPI;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Key/value state backed by a persistent {@link MerkleTree}, copies share all unmodified nodes. The values are
+ * kept by a {@link ValueStore}, e.g. off-heap in a {@link MappedValueStore}.
+ */
 public class KVSState implements StorageAPI<String, String>, State, Cloneable {
 
-    private final TreeMap<String, String> internalMap;
+    private final ValueStore valueStore;
+    private final MerkleTree tree;
 
-    @Inject
     public KVSState(TreeMap<String, String> internalMap) {
-        this.internalMap = checkNotNull(internalMap, "internalMap");
+        this(new HeapValueStore());
+        checkNotNull(internalMap, "internalMap");
+        internalMap.forEach(tree::put);
+    }
+
+    public KVSState(ValueStore valueStore) {
+        this(valueStore, 0);
+    }
+
+    /**
+     * @param treeSeed seed of the {@link MerkleTree} priorities, must match the one used by the clients
+     */
+    @Inject
+    public KVSState(ValueStore valueStore, @Named("treeSeed") Integer treeSeed) {
+        this(checkNotNull(valueStore, "valueStore"), new MerkleTree(valueStore, treeSeed));
+    }
+
+    private KVSState(ValueStore valueStore, MerkleTree tree) {
+        this.valueStore = valueStore;
+        this.tree = tree;
     }
 
     @Override
     public void init() {
-        this.internalMap.clear();
+        this.tree.init();
+        this.valueStore.clear();
+    }
+
+    @Override
+    public KVSState newState() {
+        return new KVSState(valueStore, tree.empty());
+    }
+
+    /**
+     * Serializes all entries as {@link AuxiliaryData}.
+     */
+    @Override
+    public ByteString toByteString() {
+        AuxiliaryData.Builder builder = AuxiliaryData.newBuilder();
+        tree.forEach(builder.getMutableData()::put);
+        return builder.build().toByteString();
+    }
+
+    @Override
+    public void restore(ByteString data) throws InvalidProtocolBufferException {
+        AuxiliaryData auxiliaryData = AuxiliaryData.parseFrom(data);
+        init();
+        auxiliaryData.getData().forEach(tree::put);
     }
 
     @Override
     public void put(String key, String value) {
-        internalMap.put(key, value);
+        tree.put(key, value);
     }
 
     @Override
     public String get(String key) throws KeyNotFoundException {
-        String value = internalMap.get(key);
-        if (value != null) {
-            return value;
-        }
-        else {
-            throw new KeyNotFoundException("key: " + key + " does not exist");
-        }
+        return tree.get(key);
     }
 
     @Override
     public String remove(String key) throws KeyNotFoundException {
-        String value = internalMap.remove(key);
-        if (value != null) {
-            return value;
-        }
-        else {
-            throw new KeyNotFoundException("key: " + key + " does not exist");
-        }
+        return tree.remove(key);
     }
 
     @Override
     public Iterable<String> list() {
-        return ImmutableList.copyOf(internalMap.keySet());
+        return tree.list();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * @return a snapshot of this state in O(1), updates on either copy are not visible to the other one
+     */
     @Override
     public KVSState clone() {
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(internalMap);
-            ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-            ObjectInputStream ois = new ObjectInputStream(bais);
-            return new KVSState((TreeMap<String, String>) ois.readObject());
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
+        return new KVSState(valueStore, tree.copy());
     }
 
-    public AuxiliaryData toAuxiliaryData() {
-        AuxiliaryData.Builder builder = AuxiliaryData.newBuilder();
-        builder.getMutableData().putAll(internalMap);
-        return builder.build();
+    /**
+     * @return authenticated index over the current items
+     */
+    MerkleTree tree() {
+        return tree;
     }
 
     public Iterable<String> items() {
-        return internalMap.entrySet().stream().map(entry -> entry.getKey() + ITEM_SEPARATOR + entry.getValue()).collect(Collectors.toList());
+        ImmutableList.Builder<String> items = ImmutableList.builder();
+        tree.forEach((key, value) -> items.add(key + ITEM_SEPARATOR + value));
+        return items.build();
     }
 }
-
-
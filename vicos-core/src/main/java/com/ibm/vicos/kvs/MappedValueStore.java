@@ -0,0 +1,214 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Deque;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps values UTF-8 encoded in memory-mapped segment files outside of the Java heap, only a small handle per
+ * value stays on the heap and the value is decoded on access.
+ *
+ * Segments are filled append-only. Older copies of the state may still reference overwritten or removed values,
+ * hence a value is released once its handle has been garbage collected. A segment without live values is put on
+ * a free list and reused for later values, so the mapped size is bounded by the peak of live values plus the
+ * fragmentation of partially live segments. The files are scratch space, durability is provided by the server
+ * journal.
+ */
+public class MappedValueStore implements ValueStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedValueStore.class);
+    private static final String SEGMENT_PREFIX = "values-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReferenceQueue<MappedValue> released = new ReferenceQueue<>();
+    // keeps the references of live values reachable until they are enqueued
+    private Set<ValueReference> references = Sets.newHashSet();
+    private Deque<Segment> freeSegments = Lists.newLinkedList();
+    private Segment segment;
+    private long segmentCount;
+
+    /**
+     * @param segmentSize size in bytes of a mapped segment, bounds the size of a single value
+     */
+    public MappedValueStore(String directory, int segmentSize) {
+        this.directory = Paths.get(checkNotNull(directory, "directory"));
+        checkArgument(segmentSize > 0, "segmentSize must be positive");
+        this.segmentSize = segmentSize;
+        clear();
+    }
+
+    @Override
+    public synchronized CharSequence store(String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        checkArgument(bytes.length <= segmentSize, "Value of %s bytes exceeds the segment size", bytes.length);
+        reclaim();
+        if (segment == null || segment.buffer.remaining() < bytes.length) {
+            Segment next = freeSegments.isEmpty() ? new Segment(map(segmentCount++)) : freeSegments.poll();
+            release(segment);
+            segment = next;
+        }
+        int offset = segment.buffer.position();
+        segment.buffer.put(bytes);
+        MappedValue mappedValue = new MappedValue(segment.buffer, offset, bytes.length);
+        references.add(new ValueReference(mappedValue, segment, released));
+        segment.live++;
+        return mappedValue;
+    }
+
+    @Override
+    public synchronized void clear() {
+        // segments of the released values may still be referenced by handles, they are never reused
+        references = Sets.newHashSet();
+        freeSegments = Lists.newLinkedList();
+        segment = null;
+        segmentCount = 0;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        // mappings of deleted files stay valid until they are unreachable
+                        Files.delete(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clear value store " + directory, e);
+        }
+    }
+
+    /**
+     * @return number of mapped segments, including free ones
+     */
+    public synchronized long segmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Counts the values whose handles have been collected and frees the segments left without live values.
+     */
+    private void reclaim() {
+        for (Reference<? extends MappedValue> reference; (reference = released.poll()) != null; ) {
+            if (references.remove(reference)) {
+                Segment owner = ((ValueReference) reference).segment;
+                owner.live--;
+                if (owner != segment) {
+                    release(owner);
+                }
+            }
+        }
+    }
+
+    private void release(Segment candidate) {
+        if (candidate != null && candidate.live == 0) {
+            LOG.trace("Free value segment");
+            candidate.buffer.clear();
+            freeSegments.add(candidate);
+        }
+    }
+
+    private MappedByteBuffer map(long id) {
+        Path file = directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            LOG.debug("Map value segment {}", file);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map value segment " + file, e);
+        }
+    }
+
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private int live;
+
+        private Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class ValueReference extends PhantomReference<MappedValue> {
+        private final Segment segment;
+
+        private ValueReference(MappedValue value, Segment segment, ReferenceQueue<MappedValue> queue) {
+            super(value, queue);
+            this.segment = segment;
+        }
+    }
+
+    private static final class MappedValue implements CharSequence {
+        private final ByteBuffer segment;
+        private final int offset;
+        private final int length;
+
+        private MappedValue(ByteBuffer segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return toString().length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return toString().charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            ByteBuffer buffer = segment.duplicate();
+            buffer.limit(offset + length).position(offset);
+            return Charsets.UTF_8.decode(buffer).toString();
+        }
+    }
+}
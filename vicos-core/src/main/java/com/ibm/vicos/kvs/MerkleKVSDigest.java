@@ -0,0 +1,105 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.google.inject.Inject;
+import com.google.inject.name.Named;
+
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.KeyNotFoundException;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Authenticates the state by the root hash of its {@link MerkleTree}, proofs only contain the accessed nodes.
+ */
+public class MerkleKVSDigest implements KVSDigest {
+
+    private final CryptoUtils cryptoUtils;
+    private final int treeSeed;
+
+    public MerkleKVSDigest(CryptoUtils cryptoUtils) {
+        this(cryptoUtils, 0);
+    }
+
+    @Inject
+    public MerkleKVSDigest(CryptoUtils cryptoUtils, @Named("treeSeed") Integer treeSeed) {
+        this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
+        this.treeSeed = checkNotNull(treeSeed, "treeSeed");
+    }
+
+    @Override
+    public Prover prover(KVSState state) {
+        return new TreeView(state.tree().track());
+    }
+
+    @Override
+    public Verifier verifier(AuxiliaryData auxiliaryData, String authenticatorValue) throws IntegrityException {
+        MerkleTree tree = MerkleTree.fromAuxiliaryData(auxiliaryData, treeSeed);
+        String rootHash = tree.rootHash(cryptoUtils);
+        if (!authenticatorValue.equals(rootHash)) {
+            throw new IntegrityException("Integrity violation! Expected: " + authenticatorValue + " but found: " + rootHash);
+        }
+        return new TreeView(tree);
+    }
+
+    private class TreeView implements Prover, Verifier {
+
+        private final MerkleTree tree;
+
+        private TreeView(MerkleTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public void init() {
+            tree.init();
+        }
+
+        @Override
+        public void put(String key, String value) {
+            tree.put(key, value);
+        }
+
+        @Override
+        public String get(String key) throws KeyNotFoundException {
+            return tree.get(key);
+        }
+
+        @Override
+        public String remove(String key) throws KeyNotFoundException {
+            return tree.remove(key);
+        }
+
+        @Override
+        public Iterable<String> list() {
+            return tree.list();
+        }
+
+        @Override
+        public String digest() {
+            return tree.rootHash(cryptoUtils);
+        }
+
+        @Override
+        public AuxiliaryData toAuxiliaryData() {
+            return tree.isTracking() ? tree.toProof(cryptoUtils) : tree.toAuxiliaryData(cryptoUtils);
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.ADS.MerkleProof;
+import com.ibm.vicos.common.ADS.ProofNode;
+import com.ibm.vicos.common.KeyNotFoundException;
+import com.ibm.vicos.common.StorageAPI;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Authenticated key/value index used as ADS by the KVS operation processor.
+ *
+ * The tree is a treap whose priorities are derived from the keys, hence its shape only depends on the set of
+ * stored keys and not on the order of updates. Every node carries a key/value pair and its hash covers the
+ * hashes of both children, so the root hash authenticates the whole store. Nodes are immutable and updates copy
+ * the search path only, which makes {@link #copy()} O(1).
+ *
+ * A proof for a sequence of operations is the tree pruned to the nodes visited while executing them, all other
+ * subtrees are replaced by their hash. Executing the same operations on the pruned tree yields the same result
+ * and the new root hash, accessing a pruned subtree raises an {@link IntegrityException}.
+ *
+ * Node priorities are a seeded hash of the key. Clients and server must use the same seed, choosing a random seed per
+ * deployment keeps precomputed key sets from degenerating the tree into a list.
+ *
+ * Values are handed to a {@link ValueStore} on insertion, which may keep them outside of the Java heap.
+ */
+public class MerkleTree implements StorageAPI<String, String> {
+
+    private final ValueStore valueStore;
+    private final HashFunction priorityFunction;
+    private final Set<Node> touched;
+    private final Node base;
+    private Node root;
+
+    public MerkleTree() {
+        this(new HeapValueStore());
+    }
+
+    /**
+     * @param valueStore storage for the values of inserted entries
+     */
+    public MerkleTree(ValueStore valueStore) {
+        this(valueStore, 0);
+    }
+
+    /**
+     * @param valueStore storage for the values of inserted entries
+     * @param seed       seed of the node priorities
+     */
+    public MerkleTree(ValueStore valueStore, int seed) {
+        this(checkNotNull(valueStore, "valueStore"), Hashing.murmur3_32(seed), null, null);
+    }
+
+    private MerkleTree(ValueStore valueStore, HashFunction priorityFunction, Node root, Set<Node> touched) {
+        this.valueStore = valueStore;
+        this.priorityFunction = priorityFunction;
+        this.base = root;
+        this.root = root;
+        this.touched = touched;
+    }
+
+    /**
+     * Rebuilds a (partial) tree from its proof encoding, see {@link #toAuxiliaryData(CryptoUtils)}.
+     */
+    public static MerkleTree fromAuxiliaryData(AuxiliaryData auxiliaryData) {
+        return fromAuxiliaryData(auxiliaryData, 0);
+    }
+
+    /**
+     * Rebuilds a (partial) tree from its proof encoding, the seed must match the one of the encoded tree.
+     */
+    public static MerkleTree fromAuxiliaryData(AuxiliaryData auxiliaryData, int seed) {
+        checkNotNull(auxiliaryData, "auxiliaryData");
+        HashFunction priorityFunction = Hashing.murmur3_32(seed);
+        List<ProofNode> nodes = auxiliaryData.getProof().getNodesList();
+        if (nodes.isEmpty()) {
+            return new MerkleTree(new HeapValueStore(), priorityFunction, null, null);
+        }
+        Iterator<ProofNode> iterator = nodes.iterator();
+        Node root = decode(iterator, priorityFunction);
+        if (iterator.hasNext()) {
+            throw new IntegrityException("Malformed proof: unexpected trailing nodes");
+        }
+        return new MerkleTree(new HeapValueStore(), priorityFunction, root, null);
+    }
+
+    @Override
+    public void init() {
+        root = null;
+    }
+
+    @Override
+    public void put(String key, String value) {
+        checkNotNull(key, "key");
+        checkNotNull(value, "value");
+        root = insert(root, key, valueStore.store(value));
+    }
+
+    @Override
+    public String get(String key) throws KeyNotFoundException {
+        Node node = root;
+        while (node != null) {
+            open(node);
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value.toString();
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        throw new KeyNotFoundException("key: " + key + " does not exist");
+    }
+
+    @Override
+    public String remove(String key) throws KeyNotFoundException {
+        String value = get(key);
+        root = delete(root, key);
+        return value;
+    }
+
+    @Override
+    public Iterable<String> list() {
+        ImmutableList.Builder<String> keys = ImmutableList.builder();
+        forEach((key, value) -> keys.add(key));
+        return keys.build();
+    }
+
+    /**
+     * Visits all entries in key order.
+     */
+    public void forEach(BiConsumer<String, String> action) {
+        forEach(root, action);
+    }
+
+    public boolean isTracking() {
+        return touched != null;
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * @return a copy sharing all nodes with this tree
+     */
+    public MerkleTree copy() {
+        return new MerkleTree(valueStore, priorityFunction, root, null);
+    }
+
+    /**
+     * @return an empty tree with the same value store and priorities
+     */
+    public MerkleTree empty() {
+        return new MerkleTree(valueStore, priorityFunction, null, null);
+    }
+
+    /**
+     * @return a copy which records all nodes visited by subsequent operations, see {@link #toProof(CryptoUtils)},
+     * values written to the copy are kept on the heap as it is discarded once the proof is built
+     */
+    public MerkleTree track() {
+        return new MerkleTree(new HeapValueStore(), priorityFunction, root, Sets.newIdentityHashSet());
+    }
+
+    /**
+     * @return hash of the root node, the hash of the empty tree equals the hash of an empty item list
+     */
+    public String rootHash(CryptoUtils cryptoUtils) {
+        return hash(root, cryptoUtils);
+    }
+
+    /**
+     * Encodes the tree as it was when {@link #track()} was called, pruned to the nodes visited since then.
+     */
+    public AuxiliaryData toProof(CryptoUtils cryptoUtils) {
+        checkNotNull(touched, "Tree is not tracking accessed nodes");
+        if (base == null) {
+            return AuxiliaryData.getDefaultInstance();
+        }
+        return encode(base, touched::contains, cryptoUtils);
+    }
+
+    /**
+     * Encodes all nodes available in this tree, pruned subtrees are kept as hashes.
+     */
+    public AuxiliaryData toAuxiliaryData(CryptoUtils cryptoUtils) {
+        if (root == null) {
+            return AuxiliaryData.getDefaultInstance();
+        }
+        return encode(root, node -> true, cryptoUtils);
+    }
+
+    private Node open(Node node) {
+        if (node.isPruned()) {
+            throw new IntegrityException("Proof does not cover the accessed subtree " + node.hash);
+        }
+        if (touched != null) {
+            touched.add(node);
+        }
+        return node;
+    }
+
+    private Node insert(Node node, String key, CharSequence value) {
+        if (node == null) {
+            return new Node(key, value, priority(key, priorityFunction), null, null);
+        }
+        open(node);
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return new Node(key, value, node.priority, node.left, node.right);
+        } else if (cmp < 0) {
+            Node left = insert(node.left, key, value);
+            if (left.hasPriorityOver(node)) {
+                // rotate right
+                return left.withChildren(left.left, node.withChildren(left.right, node.right));
+            }
+            return node.withChildren(left, node.right);
+        } else {
+            Node right = insert(node.right, key, value);
+            if (right.hasPriorityOver(node)) {
+                // rotate left
+                return right.withChildren(node.withChildren(node.left, right.left), right.right);
+            }
+            return node.withChildren(node.left, right);
+        }
+    }
+
+    private Node delete(Node node, String key) {
+        open(node);
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        } else if (cmp < 0) {
+            return node.withChildren(delete(node.left, key), node.right);
+        } else {
+            return node.withChildren(node.left, delete(node.right, key));
+        }
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        open(left);
+        open(right);
+        if (left.hasPriorityOver(right)) {
+            return left.withChildren(left.left, merge(left.right, right));
+        }
+        return right.withChildren(merge(left, right.left), right.right);
+    }
+
+    private void forEach(Node node, BiConsumer<String, String> action) {
+        if (node == null) {
+            return;
+        }
+        open(node);
+        forEach(node.left, action);
+        action.accept(node.key, node.value.toString());
+        forEach(node.right, action);
+    }
+
+    private static String hash(Node node, CryptoUtils cryptoUtils) {
+        if (node == null) {
+            return cryptoUtils.hash(ImmutableList.of());
+        }
+        if (node.hash == null) {
+            node.hash = digest(cryptoUtils,
+                    hash(node.left, cryptoUtils),
+                    hash(node.right, cryptoUtils),
+                    node.key,
+                    node.value.toString());
+        }
+        return node.hash;
+    }
+
+    /**
+     * The canonical encoding length-prefixes every part, hence node hashes are unambiguous.
+     */
+    private static String digest(CryptoUtils cryptoUtils, String... parts) {
+        return cryptoUtils.hash(ImmutableList.copyOf(parts));
+    }
+
+    private static AuxiliaryData encode(Node root, Predicate<Node> expand, CryptoUtils cryptoUtils) {
+        MerkleProof.Builder proof = MerkleProof.newBuilder();
+        encode(root, expand, cryptoUtils, proof);
+        return AuxiliaryData.newBuilder().setProof(proof).build();
+    }
+
+    private static void encode(Node node, Predicate<Node> expand, CryptoUtils cryptoUtils, MerkleProof.Builder proof) {
+        if (node.isPruned() || !expand.test(node)) {
+            proof.addNodesBuilder().setHash(hash(node, cryptoUtils));
+            return;
+        }
+        proof.addNodesBuilder()
+                .setKey(node.key)
+                .setValue(node.value.toString())
+                .setHasLeft(node.left != null)
+                .setHasRight(node.right != null);
+        if (node.left != null) {
+            encode(node.left, expand, cryptoUtils, proof);
+        }
+        if (node.right != null) {
+            encode(node.right, expand, cryptoUtils, proof);
+        }
+    }
+
+    private static int priority(String key, HashFunction priorityFunction) {
+        return priorityFunction.hashString(key, Charsets.UTF_8).asInt();
+    }
+
+    private static Node decode(Iterator<ProofNode> nodes, HashFunction priorityFunction) {
+        if (!nodes.hasNext()) {
+            throw new IntegrityException("Malformed proof: missing node");
+        }
+        ProofNode node = nodes.next();
+        if (!node.getHash().isEmpty()) {
+            return new Node(node.getHash());
+        }
+        Node left = node.getHasLeft() ? decode(nodes, priorityFunction) : null;
+        Node right = node.getHasRight() ? decode(nodes, priorityFunction) : null;
+        return new Node(node.getKey(), node.getValue(), priority(node.getKey(), priorityFunction), left, right);
+    }
+
+    private static final class Node {
+        private final String key;
+        private final CharSequence value;
+        private final Node left;
+        private final Node right;
+        private final int priority;
+        private String hash;
+
+        private Node(String key, CharSequence value, int priority, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.priority = priority;
+        }
+
+        /**
+         * Creates a pruned subtree only known by its hash
+         */
+        private Node(String hash) {
+            this.key = null;
+            this.value = null;
+            this.left = null;
+            this.right = null;
+            this.priority = 0;
+            this.hash = hash;
+        }
+
+        /**
+         * @return a copy of this entry with other children, the priority is carried over
+         */
+        private Node withChildren(Node left, Node right) {
+            return new Node(key, value, priority, left, right);
+        }
+
+        private boolean isPruned() {
+            return key == null;
+        }
+
+        private boolean hasPriorityOver(Node other) {
+            return priority > other.priority || (priority == other.priority && key.compareTo(other.key) < 0);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.KeyNotFoundException;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.MultisetHash;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.ibm.vicos.common.State.ITEM_SEPARATOR;
+
+/**
+ * Authenticates the state by an incremental {@link MultisetHash} over its items. The client keeps the states of the
+ * authenticator values it verified, the auxiliary data then only carries the entries changed since such a base state
+ * and the base value is updated by old·H(new)·H(old)⁻¹ per changed entry. Without a base the auxiliary data contains
+ * the whole state.
+ */
+public class MultisetKVSDigest implements KVSDigest {
+
+    // the client reports its latest verified state, a reply computed against a state evicted in the meantime
+    // cannot be verified
+    private static final int VERIFIED_STATES = 64;
+
+    private final CryptoUtils cryptoUtils;
+    private final Cache<String, VerifiedState> verifiedStates = CacheBuilder.newBuilder()
+            .maximumSize(VERIFIED_STATES)
+            .build();
+
+    @Inject
+    public MultisetKVSDigest(CryptoUtils cryptoUtils) {
+        this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
+    }
+
+    private static String item(String key, String value) {
+        return key.length() + ITEM_SEPARATOR + key + value;
+    }
+
+    @Override
+    public Prover prover(KVSState state) {
+        return prover(state, () -> {
+            AuxiliaryData.Builder builder = AuxiliaryData.newBuilder();
+            state.tree().forEach(builder.getMutableData()::put);
+            return builder.build();
+        });
+    }
+
+    @Override
+    public Prover prover(KVSState state, String base, Set<String> changedKeys) {
+        return prover(state, () -> {
+            AuxiliaryData.Builder builder = AuxiliaryData.newBuilder().setBase(base);
+            for (String key : changedKeys) {
+                try {
+                    builder.getMutableData().put(key, state.get(key));
+                } catch (KeyNotFoundException e) {
+                    builder.addRemoved(key);
+                }
+            }
+            return builder.build();
+        });
+    }
+
+    private Prover prover(KVSState state, Supplier<AuxiliaryData> auxiliaryData) {
+        final KVSState view = state.clone();
+        return new Prover() {
+            @Override
+            public AuxiliaryData toAuxiliaryData() {
+                return auxiliaryData.get();
+            }
+
+            @Override
+            public void init() {
+                view.init();
+            }
+
+            @Override
+            public void put(String key, String value) {
+                view.put(key, value);
+            }
+
+            @Override
+            public String get(String key) throws KeyNotFoundException {
+                return view.get(key);
+            }
+
+            @Override
+            public String remove(String key) throws KeyNotFoundException {
+                return view.remove(key);
+            }
+
+            @Override
+            public Iterable<String> list() {
+                return view.list();
+            }
+        };
+    }
+
+    /**
+     * Applies the changes of the auxiliary data to the kept base state, or rebuilds the state if there is no base,
+     * and keeps the verified state for later replies.
+     *
+     * @throws IntegrityException also if the base state is not kept
+     */
+    @Override
+    public Verifier verifier(AuxiliaryData auxiliaryData, String authenticatorValue) throws IntegrityException {
+        final VerifiedState verified;
+        if (auxiliaryData.getBase().isEmpty()) {
+            verified = new VerifiedState(new KVSState(new HeapValueStore()), new MultisetHash(cryptoUtils));
+        } else {
+            VerifiedState base = verifiedStates.getIfPresent(auxiliaryData.getBase());
+            if (base == null) {
+                throw new IntegrityException("Integrity violation! Unknown base state: " + auxiliaryData.getBase());
+            }
+            verified = base.copy();
+        }
+        auxiliaryData.getData().forEach(verified::put);
+        for (String key : auxiliaryData.getRemovedList()) {
+            verified.remove(key);
+        }
+
+        String a = verified.multisetHash.digest();
+        if (!authenticatorValue.equals(a)) {
+            throw new IntegrityException("Integrity violation! Expected: " + authenticatorValue + " but found: " + a);
+        }
+        verifiedStates.put(authenticatorValue, verified.copy());
+
+        final Set<String> changedKeys = Sets.newHashSet();
+        return new Verifier() {
+            @Override
+            public String digest() {
+                return verified.multisetHash.digest();
+            }
+
+            /**
+             * @return the entries changed relative to the verified state
+             */
+            @Override
+            public AuxiliaryData toAuxiliaryData() {
+                AuxiliaryData.Builder builder = AuxiliaryData.newBuilder().setBase(authenticatorValue);
+                for (String key : changedKeys) {
+                    try {
+                        builder.getMutableData().put(key, verified.state.get(key));
+                    } catch (KeyNotFoundException e) {
+                        builder.addRemoved(key);
+                    }
+                }
+                return builder.build();
+            }
+
+            @Override
+            public void init() {
+                for (String key : verified.state.list()) {
+                    changedKeys.add(key);
+                    verified.remove(key);
+                }
+            }
+
+            @Override
+            public void put(String key, String value) {
+                changedKeys.add(key);
+                verified.put(key, value);
+            }
+
+            @Override
+            public String get(String key) throws KeyNotFoundException {
+                return verified.state.get(key);
+            }
+
+            @Override
+            public String remove(String key) throws KeyNotFoundException {
+                String value = verified.state.get(key);
+                changedKeys.add(key);
+                verified.remove(key);
+                return value;
+            }
+
+            @Override
+            public Iterable<String> list() {
+                return verified.state.list();
+            }
+        };
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * A state together with the multiset hash of its items.
+     */
+    private static class VerifiedState {
+
+        private final KVSState state;
+        private final MultisetHash multisetHash;
+
+        private VerifiedState(KVSState state, MultisetHash multisetHash) {
+            this.state = state;
+            this.multisetHash = multisetHash;
+        }
+
+        private VerifiedState copy() {
+            return new VerifiedState(state.clone(), multisetHash.copy());
+        }
+
+        private void put(String key, String value) {
+            remove(key);
+            state.put(key, value);
+            multisetHash.add(item(key, value));
+        }
+
+        private void remove(String key) {
+            try {
+                String value = state.remove(key);
+                multisetHash.remove(item(key, value));
+            } catch (KeyNotFoundException e) {
+                // absent in the base state
+            }
+        }
+    }
+}
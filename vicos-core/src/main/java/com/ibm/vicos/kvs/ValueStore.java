@@ -0,0 +1,34 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.kvs;
+
+/**
+ * Storage for the values held by a {@link MerkleTree}.
+ */
+public interface ValueStore {
+
+    /**
+     * @return handle to the stored value, {@link CharSequence#toString()} returns the value
+     */
+    CharSequence store(String value);
+
+    /**
+     * Releases all stored values, handles returned before remain valid.
+     */
+    void clear();
+}
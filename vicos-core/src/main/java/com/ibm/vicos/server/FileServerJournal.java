@@ -0,0 +1,302 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.server;
+
+import com.google.common.collect.Ordering;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import com.ibm.vicos.common.Journal.Snapshot;
+import com.ibm.vicos.common.Messages.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * File based {@link ServerJournal}.
+ *
+ * Messages are appended length-delimited to numbered log segments. A snapshot starts a new segment and records
+ * its number, so recovery loads the latest snapshot and replays only the segments written after it. A torn
+ * message at the end of a segment (crash during append) ends the replay.
+ */
+public class FileServerJournal implements ServerJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileServerJournal.class);
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final int groupCommitSize;
+    private final int snapshotInterval;
+    private FileChannel channel;
+    private OutputStream output;
+    private long segment;
+    private int unsynced;
+    private long appendedSinceSnapshot;
+    private boolean snapshotDue;
+
+    /**
+     * @param groupCommitSize  maximal number of messages appended before a sync is forced
+     * @param snapshotInterval number of messages after which a new snapshot is taken
+     */
+    public FileServerJournal(String directory, int groupCommitSize, int snapshotInterval) {
+        this.directory = Paths.get(checkNotNull(directory, "directory"));
+        checkArgument(groupCommitSize > 0, "groupCommitSize must be positive");
+        checkArgument(snapshotInterval > 0, "snapshotInterval must be positive");
+        this.groupCommitSize = groupCommitSize;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @Override
+    public void recover(ServerProtocol serverProtocol) {
+        try {
+            Files.createDirectories(directory);
+
+            long nextSegment = 0;
+            for (long id : Ordering.natural().reverse().sortedCopy(list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX))) {
+                try (InputStream in = Files.newInputStream(path(SNAPSHOT_PREFIX, id, SNAPSHOT_SUFFIX))) {
+                    Snapshot snapshot = Snapshot.parseFrom(in);
+                    serverProtocol.restore(snapshot);
+                    nextSegment = snapshot.getNextSegment();
+                    LOG.info("Restored snapshot {}", id);
+                    break;
+                } catch (InvalidProtocolBufferException e) {
+                    LOG.warn("Skip corrupted snapshot {}", id, e);
+                }
+            }
+
+            long lastSegment = nextSegment - 1;
+            for (long id : Ordering.natural().sortedCopy(list(SEGMENT_PREFIX, SEGMENT_SUFFIX))) {
+                if (id >= nextSegment) {
+                    replay(id, serverProtocol);
+                }
+                lastSegment = Math.max(lastSegment, id);
+            }
+
+            // never append to a segment which may end with a torn message
+            openSegment(lastSegment + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal recovery failed", e);
+        }
+    }
+
+    @Override
+    public void append(Message message) {
+        checkState(output != null, "Journal has not been recovered");
+        try {
+            message.writeDelimitedTo(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal append failed", e);
+        }
+        unsynced++;
+        appendedSinceSnapshot++;
+        if (message.getType() == Message.Type.INIT || appendedSinceSnapshot >= snapshotInterval) {
+            snapshotDue = true;
+        }
+    }
+
+    @Override
+    public boolean needsSync() {
+        return unsynced > 0;
+    }
+
+    @Override
+    public boolean isBatchFull() {
+        return unsynced >= groupCommitSize;
+    }
+
+    @Override
+    public void sync() {
+        if (unsynced == 0) {
+            return;
+        }
+        try {
+            output.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal sync failed", e);
+        }
+        LOG.trace("Synced {} messages", unsynced);
+        unsynced = 0;
+    }
+
+    @Override
+    public boolean isSnapshotDue() {
+        return snapshotDue;
+    }
+
+    @Override
+    public void snapshot(Snapshot snapshot) {
+        sync();
+        try {
+            openSegment(segment + 1);
+
+            Path target = path(SNAPSHOT_PREFIX, segment, SNAPSHOT_SUFFIX);
+            Path temp = directory.resolve(target.getFileName() + ".tmp");
+            try (FileChannel snapshotChannel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(snapshotChannel), BUFFER_SIZE);
+                snapshot.toBuilder().setNextSegment(segment).build().writeTo(out);
+                out.flush();
+                snapshotChannel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            // the rename must be durable before the files it replaces are deleted
+            forceDirectory();
+
+            // everything older is covered by the new snapshot
+            for (long id : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (id < segment) {
+                    Files.deleteIfExists(path(SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+                }
+            }
+            for (long id : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (id < segment) {
+                    Files.deleteIfExists(path(SNAPSHOT_PREFIX, id, SNAPSHOT_SUFFIX));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal snapshot failed", e);
+        }
+        LOG.info("Snapshot {} written", segment);
+        appendedSinceSnapshot = 0;
+        snapshotDue = false;
+    }
+
+    @Override
+    public void close() {
+        if (output == null) {
+            return;
+        }
+        sync();
+        try {
+            output.close();
+        } catch (IOException e) {
+            LOG.warn("Closing journal failed", e);
+        }
+        output = null;
+        channel = null;
+    }
+
+    private void replay(long id, ServerProtocol serverProtocol) throws IOException {
+        LOG.info("Replay journal segment {}", id);
+        long count = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path(SEGMENT_PREFIX, id, SEGMENT_SUFFIX)), BUFFER_SIZE)) {
+            Message message;
+            while ((message = parseNext(in, id)) != null) {
+                apply(message, serverProtocol);
+                count++;
+            }
+        }
+        LOG.info("Replayed {} messages from segment {}", count, id);
+    }
+
+    private static Message parseNext(InputStream in, long id) {
+        try {
+            return Message.parseDelimitedFrom(in);
+        } catch (IOException e) {
+            LOG.warn("Torn message at the end of journal segment {}", id);
+            return null;
+        }
+    }
+
+    private static void apply(Message message, ServerProtocol serverProtocol) {
+        switch (message.getType()) {
+            case INIT: {
+                serverProtocol.handleInit(message.getInit());
+                break;
+            }
+            case INVOKE: {
+                // only the sequencing is replayed, replies of uncommitted invocations are rebuilt after recovery
+                serverProtocol.prepareInvoke(message.getInvoke());
+                break;
+            }
+            case COMMIT: {
+                serverProtocol.handleCommit(message.getCommit());
+                break;
+            }
+            case COMMIT_AUTH: {
+                serverProtocol.handleCommitAuth(message.getCommitAuth());
+                break;
+            }
+            default: {
+                LOG.warn("Skip unexpected journal message {}", message.getType());
+            }
+        }
+    }
+
+    private void openSegment(long id) throws IOException {
+        if (output != null) {
+            output.close();
+        }
+        segment = id;
+        channel = FileChannel.open(path(SEGMENT_PREFIX, id, SEGMENT_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        // make the new segment file itself durable
+        forceDirectory();
+    }
+
+    /**
+     * Makes the entries of the journal directory durable.
+     */
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            LOG.trace("Directory sync not supported", e);
+        }
+    }
+
+    private Path path(String prefix, long id, String suffix) {
+        return directory.resolve(prefix + id + suffix);
+    }
+
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                    .map(name -> name.substring(prefix.length(), name.length() - suffix.length()))
+                    .filter(id -> !id.isEmpty() && id.chars().allMatch(Character::isDigit))
+                    .map(Long::valueOf)
+                    .collect(Collectors.toList());
+        }
+    }
+}
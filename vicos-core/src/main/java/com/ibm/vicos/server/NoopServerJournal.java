@@ -0,0 +1,61 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.server;
+
+import com.ibm.vicos.common.Journal.Snapshot;
+import com.ibm.vicos.common.Messages.Message;
+
+/**
+ * Journal used if persistence is disabled, the server state only lives in memory.
+ */
+public class NoopServerJournal implements ServerJournal {
+
+    @Override
+    public void recover(ServerProtocol serverProtocol) {
+    }
+
+    @Override
+    public void append(Message message) {
+    }
+
+    @Override
+    public boolean needsSync() {
+        return false;
+    }
+
+    @Override
+    public boolean isBatchFull() {
+        return false;
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public boolean isSnapshotDue() {
+        return false;
+    }
+
+    @Override
+    public void snapshot(Snapshot snapshot) {
+    }
+
+    @Override
+    public void close() {
+    }
+}
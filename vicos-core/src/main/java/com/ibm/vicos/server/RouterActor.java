@@ -16,6 +16,7 @@
 
 package com.ibm.vicos.server;
 
+import com.google.common.collect.ImmutableList;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -24,44 +25,47 @@ import com.ibm.vicos.common.Messages;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import akka.actor.ActorSelection;
+import java.util.List;
+
+import akka.actor.ActorRef;
 import akka.actor.UntypedActor;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Created by bur on 25/02/16.
+ *
+ * Forwards client messages to the server actor of the shard they address. Every shard runs its own protocol
+ * instance with a separate sequence space, the client picks the shard by key, see
+ * {@link com.ibm.vicos.common.util.Utils#shardOf(String, int)}.
  */
 public class RouterActor extends UntypedActor {
 
     private static final Logger LOG = LoggerFactory.getLogger(RouterActor.class);
 
-    private ActorSelection server;
-    private ActorSelection throttler;
+    private final List<ActorRef> shards;
 
     @Inject
-    public RouterActor(@Named("serverActorSelection") ActorSelection server,
-                       @Named("throttlerActorSelection") ActorSelection throttler) {
-        this.server = checkNotNull(server, "server");
-        this.throttler = checkNotNull(throttler, "throttler");
+    public RouterActor(@Named("shardActors") List<ActorRef> shards) {
+        this.shards = ImmutableList.copyOf(checkNotNull(shards, "shards"));
+        checkArgument(!shards.isEmpty(), "At least one shard is required");
     }
 
     @Override
     public void preStart() throws Exception {
         super.preStart();
-        LOG.info("Boot RouterActor: {}", getSelf().toString());
+        LOG.info("Boot RouterActor: {} shards: {}", getSelf().toString(), shards.size());
     }
 
     private void route(final Messages.Message message) {
-        switch (message.getType()) {
-            case INVOKE: {
-                throttler.tell(message, getSender());
-                break;
-            }
-            default: {
-                server.tell(message, getSender());
-            }
+        // the shard is an unsigned proto field, values of 2^31 and above are negative
+        final int shard = message.getShard();
+        if (shard < 0 || shard >= shards.size()) {
+            LOG.warn("Message for unknown shard {} from {} dropped", Integer.toUnsignedString(shard), message.getSource());
+            return;
         }
+        shards.get(shard).forward(message, getContext());
     }
 
     @Override
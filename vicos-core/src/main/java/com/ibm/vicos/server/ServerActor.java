@@ -16,23 +16,35 @@
 
 package com.ibm.vicos.server;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 
 import com.ibm.vicos.common.Messages;
 import com.ibm.vicos.common.Messages.UpdateAuth;
+import com.ibm.vicos.common.crypto.CanonicalEncoding;
 import com.ibm.vicos.common.logging.Marker;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import akka.actor.ActorRef;
+import akka.actor.Status;
 import akka.actor.UntypedActorWithUnboundedStash;
+import akka.dispatch.Futures;
+import akka.pattern.Patterns;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.ibm.vicos.common.Messages.Message;
+import static com.ibm.vicos.common.Messages.Message.Type.READ_REPLY;
 import static com.ibm.vicos.common.Messages.Message.Type.REPLY;
 import static com.ibm.vicos.common.Messages.Message.Type.UPDATE_AUTH;
 
@@ -42,18 +54,44 @@ import static com.ibm.vicos.common.Messages.Message.Type.UPDATE_AUTH;
 public class  ServerActor extends UntypedActorWithUnboundedStash {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerActor.class);
+    private static final Object FLUSH = new Object();
     private final ServerProtocol serverProtocol;
+    private final ServerJournal journal;
     private Map<String, ActorRef> clientReferences = Maps.newHashMap();
+    // messages to unknown clients, e.g., after recovery, delivered once the client shows up
+    private ListMultimap<String, Message> parkedMessages = ArrayListMultimap.create();
+    // messages held back until the journal entries they depend on are durable
+    private List<Message> outbox = Lists.newArrayList();
+    private boolean flushScheduled = false;
 
     @Inject
-    public ServerActor(ServerProtocol serverProtocol) {
+    public ServerActor(ServerProtocol serverProtocol, ServerJournal journal) {
         this.serverProtocol = checkNotNull(serverProtocol, "serverProtocol");
+        this.journal = checkNotNull(journal, "journal");
     }
 
     @Override
     public void preStart() throws Exception {
         super.preStart();
         LOG.info("Boot actor: {}", getSelf().toString());
+        journal.recover(serverProtocol);
+        // the replies of journaled invocations may have been lost in the crash, they are parked until the client
+        // shows up again
+        for (Map.Entry<String, Supplier<Messages.Reply>> reply : serverProtocol.preparePendingReplies().entries()) {
+            buildReply(() -> Message.newBuilder()
+                    .setType(REPLY)
+                    .setReply(reply.getValue().get())
+                    .setDestination(reply.getKey())
+                    .build());
+        }
+        sendUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable());
+    }
+
+    @Override
+    public void postStop() {
+        flush();
+        journal.close();
+        super.postStop();
     }
 
     private void processRequest(final Message message) {
@@ -61,19 +99,42 @@ public class  ServerActor extends UntypedActorWithUnboundedStash {
             LOG.trace(Marker.MESSAGE_SIZE, "{} {}", message.getType(), message.toByteArray().length);
         }
 
+        if (message.getVersion() != CanonicalEncoding.VERSION) {
+            // signatures of other encoding versions never verify, the client must be upgraded
+            LOG.warn("Drop {} message from {} using encoding version {}, expected {}", message.getType(),
+                    message.getSource(), message.getVersion(), CanonicalEncoding.VERSION);
+            return;
+        }
+
         String source = message.getSource();
         clientReferences.put(source, getSender());
         LOG.debug("Received request {} message from {}", message.getType(), source);
 
+        parkedMessages.removeAll(source).forEach(this::send);
+
         switch (message.getType()) {
             case INIT: {
                 cleanup();
                 serverProtocol.handleInit(message.getInit());
+                journal.append(message);
                 break;
             }
             case INVOKE: {
                 if(serverProtocol.readyForNewInvocation()) {
-                    sendReply(serverProtocol.handleInvoke(message.getInvoke()), source);
+                    final Supplier<Messages.Reply> reply;
+                    try {
+                        reply = serverProtocol.prepareInvoke(message.getInvoke());
+                    } catch (IllegalArgumentException e) {
+                        // a correct client never invokes such an operation, it is not sequenced
+                        LOG.warn("Reject invocation from {}: {}", source, e.getMessage());
+                        break;
+                    }
+                    journal.append(message);
+                    buildReply(() -> Message.newBuilder()
+                            .setType(REPLY)
+                            .setReply(reply.get())
+                            .setDestination(source)
+                            .build());
                     unstash();
                 } else {
                     LOG.debug("Stash invoke message {}", source);
@@ -81,13 +142,25 @@ public class  ServerActor extends UntypedActorWithUnboundedStash {
                 }
                 break;
             }
+            case READ: {
+                // reads are not sequenced and leave no journal entry
+                Supplier<Messages.ReadReply> reply = serverProtocol.prepareRead(message.getRead());
+                buildReply(() -> Message.newBuilder()
+                        .setType(READ_REPLY)
+                        .setReadReply(reply.get())
+                        .setDestination(source)
+                        .build());
+                break;
+            }
             case COMMIT: {
                 serverProtocol.handleCommit(message.getCommit());
+                journal.append(message);
                 sendUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable());
                 break;
             }
             case COMMIT_AUTH: {
                 serverProtocol.handleCommitAuth(message.getCommitAuth());
+                journal.append(message);
                 sendUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable());
                 if(serverProtocol.readyForNewInvocation()) {
                     unstash();
@@ -98,14 +171,16 @@ public class  ServerActor extends UntypedActorWithUnboundedStash {
                 unhandled(message);
             }
         }
+        scheduleFlush();
     }
 
-    private void sendReply(Messages.Reply reply, String destination) {
-        send(Message.newBuilder()
-                .setType(REPLY)
-                .setReply(reply)
-                .setDestination(destination)
-                .build());
+    /**
+     * Builds the reply on the dispatcher's worker threads, the message is sent once it is piped back to this actor.
+     */
+    private void buildReply(Supplier<Message> reply) {
+        final ExecutionContext dispatcher = getContext().dispatcher();
+        Future<PreparedReply> future = Futures.future(() -> new PreparedReply(reply.get()), dispatcher);
+        Patterns.pipe(future, dispatcher).to(getSelf());
     }
 
     private void sendUpdateAuth(UpdateAuth updateAuth) {
@@ -125,6 +200,14 @@ public class  ServerActor extends UntypedActorWithUnboundedStash {
     public void onReceive(final Object message) throws Exception {
         if (message instanceof Message) {
             processRequest((Message) message);
+        } else if (message instanceof PreparedReply) {
+            send(((PreparedReply) message).message);
+        } else if (message instanceof Status.Failure) {
+            // failures to execute an operation are sent as error replies, this is a fatal error
+            LOG.error("Failed to build reply", ((Status.Failure) message).cause());
+        } else if (message == FLUSH) {
+            flushScheduled = false;
+            flush();
         } else {
             unhandled(message);
         }
@@ -139,15 +222,61 @@ public class  ServerActor extends UntypedActorWithUnboundedStash {
 
     private void cleanup() {
         clientReferences.clear();
+        parkedMessages.clear();
     }
 
     private void send(Message message) {
+        if (!journal.needsSync() && outbox.isEmpty()) {
+            deliver(message);
+            return;
+        }
+
+        outbox.add(message);
+        scheduleFlush();
+    }
+
+    /**
+     * Group commit: the flush message is processed after all messages already queued in the mailbox, so their
+     * journal entries are synced at once.
+     */
+    private void scheduleFlush() {
+        if (journal.isBatchFull()) {
+            flush();
+        } else if (journal.needsSync() && !flushScheduled) {
+            flushScheduled = true;
+            self().tell(FLUSH, self());
+        }
+    }
+
+    private void flush() {
+        journal.sync();
+        outbox.forEach(this::deliver);
+        outbox.clear();
+        if (journal.isSnapshotDue()) {
+            journal.snapshot(serverProtocol.snapshot());
+        }
+    }
+
+    private void deliver(Message message) {
         if(LOG.isTraceEnabled(Marker.MESSAGE_SIZE)) {
             LOG.trace(Marker.MESSAGE_SIZE, "{} {}", message.getType(), message.toByteArray().length);
         }
 
         ActorRef destination = clientReferences.get(message.getDestination());
+        if (destination == null) {
+            LOG.debug("Park {} message for unknown client {}", message.getType(), message.getDestination());
+            parkedMessages.put(message.getDestination(), message);
+            return;
+        }
         LOG.debug("Send {} message to {}", message.getType(), destination);
         destination.tell(message, self());
     }
+
+    private static final class PreparedReply {
+        private final Message message;
+
+        private PreparedReply(Message message) {
+            this.message = message;
+        }
+    }
 }
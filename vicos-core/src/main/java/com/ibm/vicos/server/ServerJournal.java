@@ -0,0 +1,57 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.server;
+
+import com.ibm.vicos.common.Journal.Snapshot;
+import com.ibm.vicos.common.Messages.Message;
+
+/**
+ * Write-ahead log of the messages processed by the server protocol.
+ *
+ * Appended messages become durable with the next {@link #sync()}, replies and updates caused by a message must
+ * only be sent afterwards. Several messages may be appended before a single sync (group commit).
+ */
+public interface ServerJournal {
+
+    /**
+     * Restores the latest snapshot and replays all messages logged after it.
+     */
+    void recover(ServerProtocol serverProtocol);
+
+    void append(Message message);
+
+    /**
+     * @return true if appended messages are not yet durable
+     */
+    boolean needsSync();
+
+    /**
+     * @return true if enough messages have been appended to sync without waiting for more
+     */
+    boolean isBatchFull();
+
+    void sync();
+
+    boolean isSnapshotDue();
+
+    /**
+     * Persists the snapshot, afterwards all log entries it covers are discarded.
+     */
+    void snapshot(Snapshot snapshot);
+
+    void close();
+}
@@ -16,13 +16,20 @@
 
 package com.ibm.vicos.server;
 
+import com.google.common.collect.ListMultimap;
+
+import com.ibm.vicos.common.Journal.Snapshot;
 import com.ibm.vicos.common.Messages;
 import com.ibm.vicos.common.Messages.Commit;
 import com.ibm.vicos.common.Messages.CommitAuth;
 import com.ibm.vicos.common.Messages.Init;
 import com.ibm.vicos.common.Messages.Invoke;
+import com.ibm.vicos.common.Messages.Read;
+import com.ibm.vicos.common.Messages.ReadReply;
 import com.ibm.vicos.common.Messages.Reply;
 
+import java.util.function.Supplier;
+
 /**
  * Created by bur on 28/09/15.
  */
@@ -30,6 +37,23 @@ public interface ServerProtocol {
 
     Reply handleInvoke(final Invoke message);
 
+    /**
+     * Sequences the invocation, the returned supplier builds its reply and may be called from any thread
+     */
+    Supplier<Reply> prepareInvoke(final Invoke message);
+
+    /**
+     * Rebuilds the replies of all sequenced but not yet committed invocations, e.g., after recovery
+     *
+     * @return the suppliers of the replies by client, they may be called from any thread
+     */
+    ListMultimap<String, Supplier<Reply>> preparePendingReplies();
+
+    /**
+     * Answers a read-only operation without sequencing it, the returned supplier may be called from any thread
+     */
+    Supplier<ReadReply> prepareRead(final Read message);
+
     void handleCommit(final Commit message);
 
     Messages.UpdateAuth uponNextCommittedOperationAvailable();
@@ -39,4 +63,14 @@ public interface ServerProtocol {
     void handleInit(final Init message);
 
     boolean readyForNewInvocation();
+
+    /**
+     * @return the current protocol state, see {@link ServerJournal}
+     */
+    Snapshot snapshot();
+
+    /**
+     * Replaces the current protocol state by the given snapshot
+     */
+    void restore(final Snapshot snapshot);
 }
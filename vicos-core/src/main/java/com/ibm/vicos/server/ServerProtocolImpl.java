@@ -16,33 +16,46 @@
 
 package com.ibm.vicos.server;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.Journal.Snapshot;
 import com.ibm.vicos.common.Messages.Commit;
 import com.ibm.vicos.common.Messages.CommitAuth;
 import com.ibm.vicos.common.Messages.Init;
 import com.ibm.vicos.common.Messages.Invoke;
+import com.ibm.vicos.common.Messages.Read;
+import com.ibm.vicos.common.Messages.ReadReply;
 import com.ibm.vicos.common.Messages.Reply;
 import com.ibm.vicos.common.Messages.UpdateAuth;
 import com.ibm.vicos.common.OperationProcessor;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.State;
+import com.ibm.vicos.common.crypto.CryptoUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.NavigableMap;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static com.ibm.vicos.common.crypto.CryptoUtils.INIT_HASH;
 import static com.ibm.vicos.common.OperationProcessor.QueryResult;
 import static com.ibm.vicos.common.Operations.Operation;
 import static com.ibm.vicos.common.Operations.Status.ABORT;
@@ -57,21 +70,35 @@ public class ServerProtocolImpl implements ServerProtocol {
     private static final Logger LOG = LoggerFactory.getLogger(ServerProtocolImpl.class);
     private final AtomicLong lastInvokedSeqNo;
     private final AtomicLong lastAppliedSeqNo;
-    private final NavigableMap<Long, Authenticator> authenticators; // A
-    private final NavigableMap<Long, Operation> operations; // I
-    private final OperationProcessor operationProcessor;
+    private final SequenceBuffer<Authenticator> authenticators; // A
+    private final SequenceBuffer<Operation> operations; // I
+    private final OperationProcessor<State> operationProcessor;
     private final AtomicBoolean waitingForCommitAuth = new AtomicBoolean(false);
     private final Integer pendingListMaxLength;
+    private final CryptoUtils cryptoUtils;
+    private final Integer historyMaxLength;
+    private final Integer updateAuthMaxOperations;
+    private final Map<String, Long> acknowledged = Maps.newHashMap(); // last sequence number known per client
+    private final SortedMap<Long, Invoke> pendingInvocations = Maps.newTreeMap(); // sequenced, not yet committed
+    private final Map<String, Authenticator> verifiedAuthenticators = Maps.newHashMap(); // latest state kept per client
+    private String checkpointHash = INIT_HASH; // hash chain value preceding the first retained operation
     private State state;
 
+    /**
+     * The operation processor is bound without type parameter, it must operate on the type of the given state.
+     */
     @Inject
+    @SuppressWarnings({"rawtypes", "unchecked"})
     public ServerProtocolImpl(@Named("lastInvokedSeqNo") AtomicLong t,
                               @Named("lastAppliedSeqNo") AtomicLong b,
                               State dataStructure,
                               OperationProcessor operationProcessor,
-                              NavigableMap<Long, Operation> operations,
-                              NavigableMap<Long, Authenticator> authenticators,
-                              @Named("pendingListMaxLength") Integer pendingListMaxLength) {
+                              SequenceBuffer<Operation> operations,
+                              SequenceBuffer<Authenticator> authenticators,
+                              @Named("pendingListMaxLength") Integer pendingListMaxLength,
+                              CryptoUtils cryptoUtils,
+                              @Named("historyMaxLength") Integer historyMaxLength,
+                              @Named("updateAuthMaxOperations") Integer updateAuthMaxOperations) {
         this.lastInvokedSeqNo = checkNotNull(t, "lastInvokedSeqNo");
         this.lastAppliedSeqNo = checkNotNull(b, "lastAppliedSeqNo");
         this.state = checkNotNull(dataStructure, "state");
@@ -79,6 +106,11 @@ public class ServerProtocolImpl implements ServerProtocol {
         this.operations = checkNotNull(operations, "appliedOperations");
         this.authenticators = checkNotNull(authenticators, "authenticators");
         this.pendingListMaxLength = checkNotNull(pendingListMaxLength, "pendingListMaxLength");
+        this.cryptoUtils = checkNotNull(cryptoUtils, "cryptoUtils");
+        this.historyMaxLength = checkNotNull(historyMaxLength, "historyMaxLength");
+        checkArgument(historyMaxLength >= 0, "historyMaxLength must not be negative");
+        this.updateAuthMaxOperations = checkNotNull(updateAuthMaxOperations, "updateAuthMaxOperations");
+        checkArgument(updateAuthMaxOperations >= 1, "updateAuthMaxOperations must be positive");
     }
 
     @Override
@@ -90,17 +122,29 @@ public class ServerProtocolImpl implements ServerProtocol {
      * @param message
      * @return
      */
+    public Reply handleInvoke(final Invoke message) {
+        return prepareInvoke(message).get();
+    }
+
+    /**
+     * Assigns the sequence number in a short critical section and captures the operations, the authenticator and
+     * the state the reply depends on. The returned supplier builds the reply from these immutable snapshots only,
+     * the state is never modified in place but replaced by {@link #handleCommitAuth(CommitAuth)}.
+     */
     @SuppressWarnings("unchecked")
-    public synchronized Reply handleInvoke(final Invoke message) {
+    public synchronized Supplier<Reply> prepareInvoke(final Invoke message) {
         LOG.debug("Process Invoke message");
         LOG.trace("Message {}", message);
 
 
         Operation operation = message.getOperation();
         final String clientId = operation.getClientId();
+        checkArgument(operationProcessor.isValid(operation), "Invalid operation: %s", operation);
 
         // clientsLastSequenceNumber could be initial value (0)
         long clientsLastSequenceNumber = message.getLastSequenceNumber();
+        acknowledge(clientId, clientsLastSequenceNumber);
+        verifiedAuthenticators.put(clientId, message.getVerifiedAuthenticator());
 
         final long newSequenceNumber = lastInvokedSeqNo.incrementAndGet();
         final long lastAppliedSequenceNumber = this.lastAppliedSeqNo.get();
@@ -108,21 +152,146 @@ public class ServerProtocolImpl implements ServerProtocol {
 
 
         // store sequence number in operation
-        operations.put(newSequenceNumber, Operation.newBuilder()
+        final Operation sequencedOperation = Operation.newBuilder()
                 .mergeFrom(operation)
                 .setSequenceNumber(newSequenceNumber)
-                .build());
+                .build();
+        operations.put(newSequenceNumber, sequencedOperation);
+        final Invoke sequencedInvoke = message.toBuilder().setOperation(sequencedOperation).build();
+        pendingInvocations.put(newSequenceNumber, sequencedInvoke);
+
+        final Supplier<Reply> reply = prepareReply(sequencedInvoke, newSequenceNumber);
+        truncate();
+        return reply;
+    }
+
+    /**
+     * Rebuilds the replies of all sequenced but not yet committed invocations against the current state. After
+     * recovery it is unknown whether they have been sent before the crash, the clients drop replies they already
+     * received.
+     *
+     * @return the replies by client
+     */
+    public synchronized ListMultimap<String, Supplier<Reply>> preparePendingReplies() {
+        final ListMultimap<String, Supplier<Reply>> replies = ArrayListMultimap.create();
+        pendingInvocations.forEach((sequenceNumber, invoke) ->
+                replies.put(invoke.getOperation().getClientId(), prepareReply(invoke, sequenceNumber)));
+        return replies;
+    }
+
+    /**
+     * Captures the view of the invocation with the given sequence number, the last applied operation precedes it
+     * as the operation is not committed yet.
+     */
+    private Supplier<Reply> prepareReply(final Invoke message, final long newSequenceNumber) {
+        final Operation operation = message.getOperation();
+        final String clientId = operation.getClientId();
+        final long clientsLastSequenceNumber = message.getLastSequenceNumber();
+        final long lastAppliedSequenceNumber = this.lastAppliedSeqNo.get();
+
+        // the client cannot extend its hash chain if the operations following its last known one were truncated,
+        // it resumes at the first retained operation instead
+        long deltaStart = clientsLastSequenceNumber;
+        String clientCheckpointHash = "";
+        if (isTruncated(clientsLastSequenceNumber)) {
+            LOG.debug("History of client {} truncated, send checkpoint {}", clientId, operations.firstSequenceNumber() - 1);
+            deltaStart = operations.firstSequenceNumber();
+            clientCheckpointHash = checkpointHash;
+        }
 
-        Collection<Operation> deltaOperations = operations.subMap(clientsLastSequenceNumber, true, lastAppliedSequenceNumber, true).values();
+        final List<Operation> deltaOperations = ImmutableList.copyOf(operations.range(deltaStart, lastAppliedSequenceNumber));
         LOG.debug("deltaOps size: {}", deltaOperations.size());
         LOG.trace("newSeq:{} lastSeq:{} clientsLastSeq: {}", newSequenceNumber, lastAppliedSequenceNumber, clientsLastSequenceNumber);
         checkState((deltaOperations.size() >= 1)
                         && (deltaOperations.size() <= lastAppliedSequenceNumber - clientsLastSequenceNumber + 1),
                 "delta operation can not be empty, it always contains last applied operation");
 
-        Collection<Operation> pendingOperations = operations.subMap(lastAppliedSequenceNumber + 1, true, newSequenceNumber, false).values();
+        final List<Operation> pendingOperations = ImmutableList.copyOf(operations.range(lastAppliedSequenceNumber + 1, newSequenceNumber - 1));
         LOG.debug("pendingOps size: {}", pendingOperations.size());
 
+        final Authenticator lastAuthenticator = authenticators.get(lastAppliedSequenceNumber);
+        final Authenticator base = baseOf(message.getVerifiedAuthenticator(), lastAppliedSequenceNumber);
+        final List<Operation> applied = appliedSince(base, lastAppliedSequenceNumber);
+        final State snapshot = state;
+        final String replyCheckpointHash = clientCheckpointHash;
+
+        return () -> {
+            Reply.Builder reply = Reply.newBuilder()
+                    .addAllDeltaOperations(deltaOperations)
+                    .setLastAuthenticator(lastAuthenticator)
+                    .addAllPendingOperations(pendingOperations)
+                    .setAssignedSequenceNumber(newSequenceNumber)
+                    .setCheckpointHash(replyCheckpointHash)
+                    .setInvocationId(message.getInvocationId());
+            try {
+                QueryResult queryResult = query(snapshot, pendingOperations, operation, base, applied);
+                return reply.setResult(queryResult.getResult())
+                        .setAuxiliaryData(queryResult.getAuxiliaryData())
+                        .build();
+            } catch (RuntimeException e) {
+                // the operation is sequenced, the client still needs the view to commit it as aborted
+                LOG.error("Failed to execute operation {}", newSequenceNumber, e);
+                return reply.setError(String.valueOf(e)).build();
+            }
+        };
+    }
+
+    /**
+     * Answers a read-only operation against the last applied authenticator. The operation is not sequenced, hence
+     * it neither occupies a pending slot nor needs to be committed, the client verifies the view and the result
+     * like for a {@link Reply}. Reads are not journaled, so they leave the protocol state unchanged, e.g., they
+     * neither acknowledge operations nor truncate the history.
+     */
+    public synchronized Supplier<ReadReply> prepareRead(final Read message) {
+        LOG.debug("Process Read message");
+        LOG.trace("Message {}", message);
+
+        final Operation operation = message.getOperation();
+        final long clientsLastSequenceNumber = message.getLastSequenceNumber();
+
+        final long lastAppliedSequenceNumber = this.lastAppliedSeqNo.get();
+        long deltaStart = clientsLastSequenceNumber;
+        String clientCheckpointHash = "";
+        if (isTruncated(clientsLastSequenceNumber)) {
+            deltaStart = operations.firstSequenceNumber();
+            clientCheckpointHash = checkpointHash;
+        }
+
+        final List<Operation> deltaOperations = ImmutableList.copyOf(operations.range(deltaStart, lastAppliedSequenceNumber));
+        final List<Operation> pendingOperations = ImmutableList.copyOf(operations.range(lastAppliedSequenceNumber + 1, lastInvokedSeqNo.get()));
+        final Authenticator lastAuthenticator = authenticators.get(lastAppliedSequenceNumber);
+        final Authenticator base = baseOf(message.getVerifiedAuthenticator(), lastAppliedSequenceNumber);
+        final List<Operation> applied = appliedSince(base, lastAppliedSequenceNumber);
+        final State snapshot = state;
+        final String replyCheckpointHash = clientCheckpointHash;
+
+        return () -> {
+            ReadReply.Builder reply = ReadReply.newBuilder()
+                    .addAllDeltaOperations(deltaOperations)
+                    .setLastAuthenticator(lastAuthenticator)
+                    .addAllPendingOperations(pendingOperations)
+                    .setCheckpointHash(replyCheckpointHash)
+                    .setInvocationId(message.getInvocationId());
+            try {
+                QueryResult queryResult = query(snapshot, pendingOperations, operation, base, applied);
+                return reply.setResult(queryResult.getResult())
+                        .setAuxiliaryData(queryResult.getAuxiliaryData())
+                        .build();
+            } catch (RuntimeException e) {
+                LOG.error("Failed to execute read", e);
+                return reply.setError(String.valueOf(e)).build();
+            }
+        };
+    }
+
+    /**
+     * Executes the operation on the snapshot after the pending operations it depends on. If the client keeps the
+     * state of the base authenticator, the auxiliary data may only cover the applied operations following it.
+     */
+    private QueryResult query(final State snapshot, final List<Operation> pendingOperations, final Operation operation,
+                              final Authenticator base, final List<Operation> applied) {
+        final String clientId = operation.getClientId();
+
         // filter operations by user
         // and omit aborted operations (this is a protocol extension)
         List<Operation> successByOthers = pendingOperations.stream()
@@ -141,16 +310,34 @@ public class ServerProtocolImpl implements ServerProtocol {
         successByOthers.add(operation);
 
         // extract new partial state according to all pending operation by the user
-        QueryResult queryResult = operationProcessor.query(state, successByOthers);
-
-        return Reply.newBuilder()
-                .addAllDeltaOperations(deltaOperations)
-                .setLastAuthenticator(authenticators.get(lastAppliedSequenceNumber))
-                .addAllPendingOperations(pendingOperations)
-                .setAssignedSequenceNumber(newSequenceNumber)
-                .setResult(queryResult.getResult())
-                .setAuxiliaryData(queryResult.getAuxiliaryData())
-                .build();
+        return query(snapshot, successByOthers, base, applied);
+    }
+
+    private QueryResult query(final State snapshot, final List<Operation> operations,
+                              final Authenticator base, final List<Operation> applied) {
+        return base == null
+                ? operationProcessor.query(snapshot, operations)
+                : operationProcessor.query(snapshot, operations, base, applied);
+    }
+
+    /**
+     * @return the retained authenticator the client reported to keep the state of, null if there is none
+     */
+    private Authenticator baseOf(final Authenticator verifiedAuthenticator, final long lastAppliedSequenceNumber) {
+        if (verifiedAuthenticator.getValue().isEmpty()
+                || verifiedAuthenticator.getSequenceNumber() > lastAppliedSequenceNumber) {
+            return null;
+        }
+        Authenticator base = authenticators.get(verifiedAuthenticator.getSequenceNumber());
+        return base != null && base.getValue().equals(verifiedAuthenticator.getValue()) ? base : null;
+    }
+
+    /**
+     * @return the applied operations following the base authenticator
+     */
+    private List<Operation> appliedSince(final Authenticator base, final long lastAppliedSequenceNumber) {
+        return base == null ? ImmutableList.of()
+                : ImmutableList.copyOf(operations.range(base.getSequenceNumber() + 1, lastAppliedSequenceNumber));
     }
 
     /**
@@ -173,9 +360,13 @@ public class ServerProtocolImpl implements ServerProtocol {
                 .build();
 
         operations.put(seqNo, newOperation);
+        pendingInvocations.remove(seqNo);
     }
 
     /**
+     * Coalesces the run of committed operations following the last applied one, at most updateAuthMaxOperations,
+     * into a single UpdateAuth for the client of the last operation in the run.
+     *
      * @return
      */
     @SuppressWarnings("unchecked")
@@ -203,19 +394,36 @@ public class ServerProtocolImpl implements ServerProtocol {
             LOG.trace("Authenticator already available {}", nextSeqNum);
             return null;
         }
-        LOG.debug("Process next committed operation [seq: {}]", nextSeqNum);
+
+        final List<Operation> committed = Lists.newArrayList(operation);
+        for (long seq = nextSeqNum + 1; committed.size() < updateAuthMaxOperations; seq++) {
+            Operation next = operations.get(seq);
+            if (next == null || next.getStatus() == UNKNOWN) {
+                break;
+            }
+            committed.add(next);
+        }
+        operation = committed.remove(committed.size() - 1);
+        LOG.debug("Process next committed operations [seq: {} - {}]", nextSeqNum, operation.getSequenceNumber());
 
         final Authenticator lastAuthenticator = checkNotNull(authenticators.get(lastAppliedSeqNo), "lastAuthenticator");
         final Operation lastAppliedOperation = checkNotNull(operations.get(lastAppliedSeqNo), "lastAppliedOperation");
 
         UpdateAuth.Builder updateAuth = UpdateAuth.newBuilder()
+                .addAllPrecedingOperations(committed)
                 .setOperation(operation)
                 .setLastOperation(lastAppliedOperation)
                 .setLastAuthenticator(lastAuthenticator);
 
-        // extract new partial state according to that operation
-        if (operation.getStatus().equals(SUCCESS)) {
-            QueryResult queryResult = operationProcessor.query(state, ImmutableList.of(operation));
+        // extract new partial state according to the successful operations
+        committed.add(operation);
+        List<Operation> successful = committed.stream()
+                .filter(o -> o.getStatus() == SUCCESS)
+                .collect(Collectors.toList());
+        if (!successful.isEmpty()) {
+            final Authenticator base = baseOf(verifiedAuthenticators.getOrDefault(operation.getClientId(),
+                    Authenticator.getDefaultInstance()), lastAppliedSeqNo);
+            QueryResult queryResult = query(state, successful, base, appliedSince(base, lastAppliedSeqNo));
             updateAuth.setResult(queryResult.getResult()).setAuxiliaryData(queryResult.getAuxiliaryData());
         }
 
@@ -233,19 +441,27 @@ public class ServerProtocolImpl implements ServerProtocol {
         Authenticator authenticator = message.getAuthenticator();
 
         long sequenceNumber = authenticator.getSequenceNumber();
-        lastAppliedSeqNo.incrementAndGet();
+        checkState(sequenceNumber > lastAppliedSeqNo.get(), "Authenticator %s already applied", sequenceNumber);
+
+        // executes only if operation is compatible, the authenticator may cover a run of coalesced operations; the
+        // run is applied to a copy first so that a failing value store leaves the protocol state untouched
+        State refreshed = state;
+        for (Operation operation : operations.range(lastAppliedSeqNo.get() + 1, sequenceNumber)) {
+            if (operation.getStatus() == SUCCESS) {
+                refreshed = operationProcessor.refresh(refreshed, operation, message.getAuxiliaryData());
+            }
+        }
 
         // save the new authenticator
         authenticators.put(sequenceNumber, authenticator);
-
-        // executes only if operation is compatible
-        final Operation operation = operations.get(sequenceNumber);
-        if (operation.getStatus() == SUCCESS) {
-            state = operationProcessor.refresh(state, operation, message.getAuxiliaryData());
-        }
+        state = refreshed;
+        lastAppliedSeqNo.set(sequenceNumber);
 
         waitingForCommitAuth.set(false);
 
+        acknowledge(authenticator.getClientId(), sequenceNumber);
+        truncate();
+
         LOG.debug("Server state has been updated! t: {} b: {}", lastInvokedSeqNo.get(), lastAppliedSeqNo.get());
         LOG.trace("lastInvoked: {}", operations.get(lastInvokedSeqNo.get()));
         LOG.trace("lastApplied: {}", operations.get(lastAppliedSeqNo.get()));
@@ -269,10 +485,16 @@ public class ServerProtocolImpl implements ServerProtocol {
 
         operations.clear();
         authenticators.clear();
+        acknowledged.clear();
+        pendingInvocations.clear();
+        verifiedAuthenticators.clear();
+        checkpointHash = INIT_HASH;
 
         operations.put(sequenceNumber, operation);
         authenticators.put(sequenceNumber, authenticator);
 
+        // replies prepared before may still be built from the previous state
+        state = state.newState();
         state.init();
 
         LOG.info("Server has been initialized! t: {} b: {}", lastInvokedSeqNo.get(), lastAppliedSeqNo.get());
@@ -280,4 +502,76 @@ public class ServerProtocolImpl implements ServerProtocol {
         LOG.trace("lastApplied: {}", operations.get(lastAppliedSeqNo.get()));
         LOG.trace("lastAuthenticator {}", authenticators.get(lastAppliedSeqNo.get()));
     }
+
+    public synchronized Snapshot snapshot() {
+        return Snapshot.newBuilder()
+                .setLastInvokedSequenceNumber(lastInvokedSeqNo.get())
+                .setLastAppliedSequenceNumber(lastAppliedSeqNo.get())
+                .addAllOperations(operations.values())
+                .addAllAuthenticators(authenticators.values())
+                .setState(state.toByteString())
+                .setCheckpointHash(checkpointHash)
+                .putAllAcknowledged(acknowledged)
+                .addAllPendingInvocations(pendingInvocations.values())
+                .build();
+    }
+
+    public synchronized void restore(final Snapshot snapshot) {
+        LOG.debug("Restore snapshot");
+
+        final State restored = state.newState();
+        try {
+            restored.restore(snapshot.getState());
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Corrupted state in snapshot", e);
+        }
+        state = restored;
+
+        operations.clear();
+        snapshot.getOperationsList().forEach(o -> operations.put(o.getSequenceNumber(), o));
+        authenticators.clear();
+        snapshot.getAuthenticatorsList().forEach(a -> authenticators.put(a.getSequenceNumber(), a));
+        acknowledged.clear();
+        acknowledged.putAll(snapshot.getAcknowledged());
+        pendingInvocations.clear();
+        verifiedAuthenticators.clear();
+        snapshot.getPendingInvocationsList().forEach(invoke ->
+                pendingInvocations.put(invoke.getOperation().getSequenceNumber(), invoke));
+        checkpointHash = snapshot.getCheckpointHash().isEmpty() ? INIT_HASH : snapshot.getCheckpointHash();
+
+        lastInvokedSeqNo.set(snapshot.getLastInvokedSequenceNumber());
+        lastAppliedSeqNo.set(snapshot.getLastAppliedSequenceNumber());
+        waitingForCommitAuth.set(false);
+
+        LOG.info("Server has been restored! t: {} b: {}", lastInvokedSeqNo.get(), lastAppliedSeqNo.get());
+    }
+
+    /**
+     * @return true if operations following the client's last known one have been truncated
+     */
+    private boolean isTruncated(final long clientsLastSequenceNumber) {
+        return clientsLastSequenceNumber < operations.firstSequenceNumber() - 1;
+    }
+
+    private void acknowledge(final String clientId, final long sequenceNumber) {
+        acknowledged.merge(clientId, sequenceNumber, Math::max);
+    }
+
+    /**
+     * Drops operations and authenticators below the minimal sequence number acknowledged by all known clients,
+     * but keeps at most historyMaxLength applied operations. The hash chain value of the dropped prefix is kept
+     * as checkpoint for clients lagging behind the retained history.
+     */
+    private void truncate() {
+        final long lastAppliedSequenceNumber = lastAppliedSeqNo.get();
+        long watermark = acknowledged.isEmpty() ? 0 : Collections.min(acknowledged.values());
+        watermark = Math.max(watermark, lastAppliedSequenceNumber - historyMaxLength);
+        watermark = Math.min(watermark, lastAppliedSequenceNumber);
+
+        for (Operation operation : operations.range(operations.firstSequenceNumber(), watermark - 1)) {
+            checkpointHash = cryptoUtils.nextHashChainValue(checkpointHash, operation);
+        }
+        operations.truncate(watermark);
+        authenticators.truncate(watermark);
+    }
 }
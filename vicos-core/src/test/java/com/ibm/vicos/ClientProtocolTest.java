@@ -16,14 +16,13 @@
 
 package com.ibm.vicos;
 
-import com.google.common.collect.Maps;
-
 import com.ibm.vicos.client.ClientProtocol;
 import com.ibm.vicos.client.ClientProtocolImpl;
 import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.ClientLookupMap;
 import com.ibm.vicos.common.DummyClientLookupMap;
 import com.ibm.vicos.common.Operations;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.DSACryptoUtilsImpl;
 import com.ibm.vicos.common.util.Utils;
@@ -35,7 +34,7 @@ import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import java.security.KeyPair;
-import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.ibm.vicos.common.util.ClientIdentityGenerator.generate;
@@ -48,12 +47,13 @@ import static com.ibm.vicos.common.util.ClientIdentityGenerator.generateRSA;
 public class ClientProtocolTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(ClientProtocolTest.class);
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
     private final CryptoUtils cryptoUtils = new DSACryptoUtilsImpl();
     private ClientIdentifier clientIdentifier;
     private ClientLookupMap clientLookupMap;
     private KVSOperationProcessor operationProcessor;
-    private NavigableMap<Long, String> hashChain;
-    private NavigableMap<Long, Operations.Status> status;
+    private SequenceBuffer<String> hashChain;
+    private SequenceBuffer<Operations.Status> status;
     private AtomicLong lastSequenceNumber;
     private ClientProtocol clientProtocol;
 
@@ -72,12 +72,12 @@ public class ClientProtocolTest {
         clientIdentifier = generate("TestClient", keyPair.getPublic(), keyPair.getPrivate());
         clientLookupMap = new DummyClientLookupMap(clientIdentifier);
 
-        hashChain = Maps.newTreeMap();
-        status = Maps.newTreeMap();
+        hashChain = new SequenceBuffer<>();
+        status = new SequenceBuffer<>();
 
         lastSequenceNumber = new AtomicLong(0);
 
-        clientProtocol = new ClientProtocolImpl(hashChain, status, lastSequenceNumber, clientLookupMap, clientIdentifier, cryptoUtils, operationProcessor);
+        clientProtocol = new ClientProtocolImpl(hashChain, status, lastSequenceNumber, clientLookupMap, clientIdentifier, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
     }
 
     @Test
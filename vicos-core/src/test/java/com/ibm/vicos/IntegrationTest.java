@@ -26,6 +26,7 @@ import com.ibm.vicos.common.ClientLookupMap;
 import com.ibm.vicos.common.Messages;
 import com.ibm.vicos.common.Operations;
 import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.crypto.CryptoUtils;
 import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
 import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
@@ -40,7 +41,7 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import java.security.KeyPair;
-import java.util.NavigableMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -60,18 +61,21 @@ public class IntegrationTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(IntegrationTest.class);
     private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
     private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
     private ClientIdentifier clientIdentifier_AAA;
     private ClientIdentifier clientIdentifier_BBB;
     private ClientIdentifier clientIdentifier_CCC;
     private KVSState state = new KVSState(Maps.newTreeMap());
     private ServerProtocolImpl serverProtocolImpl;
-    private NavigableMap<Long, String> hashChain = Maps.newTreeMap();
-    private NavigableMap<Long, Operation> operations = Maps.newTreeMap();
-    private NavigableMap<Long, Authenticator> authenticators = Maps.newTreeMap();
+    private SequenceBuffer<String> hashChain = new SequenceBuffer<>();
+    private SequenceBuffer<Operation> operations = new SequenceBuffer<>();
+    private SequenceBuffer<Authenticator> authenticators = new SequenceBuffer<>();
     private ClientLookupMap clientLookupMap;
     private KVSOperationProcessor operationProcessor;
-    private NavigableMap<Long, Operations.Status> status = Maps.newTreeMap();
+    private SequenceBuffer<Operations.Status> status = new SequenceBuffer<>();
     private AtomicLong lastSequenceNumber = new AtomicLong(0);
     private ClientProtocolImpl clientProtocolImpl_AAA;
     private ClientProtocolImpl clientProtocolImpl_BBB;
@@ -118,11 +122,11 @@ public class IntegrationTest {
         clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
         clientLookupMap.put(clientIdentifier_CCC.getClientId(), clientIdentifier_CCC);
 
-        serverProtocolImpl = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), state, operationProcessor, operations, authenticators, MAX_PENDING_LIST);
+        serverProtocolImpl = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), state, operationProcessor, operations, authenticators, MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
 
-        clientProtocolImpl_AAA = new ClientProtocolImpl(hashChain, status, lastSequenceNumber, clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor);
-        clientProtocolImpl_BBB = new ClientProtocolImpl(Maps.newTreeMap(), Maps.newTreeMap(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor);
-        clientProtocolImpl_CCC = new ClientProtocolImpl(Maps.newTreeMap(), Maps.newTreeMap(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor);
+        clientProtocolImpl_AAA = new ClientProtocolImpl(hashChain, status, lastSequenceNumber, clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocolImpl_BBB = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocolImpl_CCC = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
 
     }
 
@@ -24,6 +24,7 @@ import com.ibm.vicos.common.ClientIdentifier;
 import com.ibm.vicos.common.Messages;
 import com.ibm.vicos.common.Operations;
 import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
 import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
 import com.ibm.vicos.kvs.KVSOperationProcessor;
@@ -36,7 +37,6 @@ import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import java.security.KeyPair;
-import java.util.NavigableMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.ibm.vicos.common.Operations.OpCode.GET;
@@ -49,13 +49,15 @@ public class ServerProtocolTest {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerProtocolTest.class);
     private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
     private ClientIdentifier clientIdentifier;
     private RSACryptoUtilsImpl cryptoUtils;
     private KVSState state;
     private ServerProtocol serverProtocol;
-    private NavigableMap<Long, String> hashChain = Maps.newTreeMap();
-    private NavigableMap<Long, Operation> operations = Maps.newTreeMap();
-    private NavigableMap<Long, Authenticator> authenticators = Maps.newTreeMap();
+    private SequenceBuffer<String> hashChain = new SequenceBuffer<>();
+    private SequenceBuffer<Operation> operations = new SequenceBuffer<>();
+    private SequenceBuffer<Authenticator> authenticators = new SequenceBuffer<>();
 
     @Test
     public void testCreateServer() throws Exception {
@@ -72,7 +74,7 @@ public class ServerProtocolTest {
 
         KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
 
-        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), state, operationProcessor, operations, authenticators, MAX_PENDING_LIST);
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), state, operationProcessor, operations, authenticators, MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
     }
 
     @Test(dependsOnMethods = {"testCreateServer"})
@@ -0,0 +1,329 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.client;
+
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.Journal.Snapshot;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Messages;
+import com.ibm.vicos.common.Messages.CommitResult;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.OperationProcessor.QueryResult;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+import com.ibm.vicos.kvs.ValueStore;
+import com.ibm.vicos.server.ServerProtocolImpl;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.ibm.vicos.common.Operations.OpCode.BATCH;
+import static com.ibm.vicos.common.Operations.OpCode.GET;
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.Operations.ResultType.KEY_NOT_FOUND;
+import static com.ibm.vicos.common.Operations.Status.ABORT;
+import static com.ibm.vicos.common.Operations.Status.SUCCESS;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class PipelinedInvocationTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
+    private ClientProtocolImpl clientProtocol_AAA;
+    private ClientProtocolImpl clientProtocol_BBB;
+    private ServerProtocolImpl serverProtocol;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier_AAA = ClientIdentifier.builder()
+                .setClientId("TestClientAAA")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientIdentifier clientIdentifier_BBB = ClientIdentifier.builder()
+                .setClientId("TestClientBBB")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier_AAA.getClientId(), clientIdentifier_AAA);
+        clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
+
+        clientProtocol_AAA = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocol_BBB = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                operationProcessor, new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+    }
+
+    @Test
+    public void testPipelinedInvocations() throws Exception {
+        Messages.Reply put = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value")));
+        Messages.Reply get = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+
+        // replies are correlated by invocation id, not by arrival order
+        CommitResult getResult = clientProtocol_AAA.handleReply(get);
+        CommitResult putResult = clientProtocol_AAA.handleReply(put);
+        assertEquals(putResult.getResult().getStatus(), SUCCESS);
+        assertEquals(getResult.getResult().getStatus(), SUCCESS);
+        assertEquals(getResult.getResult().getValues(0), "value");
+
+        serverProtocol.handleCommit(putResult.getCommit());
+        serverProtocol.handleCommit(getResult.getCommit());
+        applyCommitted(clientProtocol_AAA);
+        applyCommitted(clientProtocol_AAA);
+
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        assertEquals(clientProtocol_AAA.handleReply(reply).getResult().getValues(0), "value");
+    }
+
+    @Test
+    public void testPipelinedInvocationsAcrossOperationsOfOthers() throws Exception {
+        execute(clientProtocol_AAA, operation(PUT, "key", "value"));
+        execute(clientProtocol_BBB, operation(PUT, "other", "value"));
+        execute(clientProtocol_BBB, operation(PUT, "other", "changed"));
+
+        // both invocations start from the same view, the first reply advances it past the start of the second one
+        Messages.Reply first = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        Messages.Reply second = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "other", "")));
+        assertEquals(clientProtocol_AAA.handleReply(first).getResult().getValues(0), "value");
+        assertEquals(clientProtocol_AAA.handleReply(second).getResult().getValues(0), "changed");
+    }
+
+    @Test
+    public void testAbortedPredecessorAbortsSuccessor() throws Exception {
+        Messages.Reply other = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(PUT, "key", "value")));
+        Messages.Reply first = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        Messages.Reply second = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "other", "")));
+
+        assertEquals(clientProtocol_AAA.handleReply(first).getResult().getStatus(), ABORT);
+        assertEquals(clientProtocol_AAA.handleReply(second).getResult().getStatus(), ABORT);
+        assertEquals(clientProtocol_BBB.handleReply(other).getResult().getStatus(), SUCCESS);
+    }
+
+    @Test
+    public void testBatchIsCommittedAsOneOperation() throws Exception {
+        Operation batch = Operation.newBuilder().setOpCode(BATCH)
+                .addOperations(operation(PUT, "key", "value"))
+                .addOperations(operation(GET, "key", ""))
+                .build();
+        CommitResult result = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(batch)));
+        assertEquals(result.getResult().getStatus(), SUCCESS);
+        assertEquals(result.getResult().getResults(1).getValues(0), "value");
+
+        serverProtocol.handleCommit(result.getCommit());
+        applyCommitted(clientProtocol_AAA);
+
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        assertEquals(clientProtocol_AAA.handleReply(reply).getResult().getValues(0), "value");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNestedBatchIsRejectedByClient() throws Exception {
+        clientProtocol_AAA.invokeOperation(nestedBatch());
+    }
+
+    @Test
+    public void testNestedBatchIsRejectedByServer() throws Exception {
+        Messages.Invoke invoke = clientProtocol_AAA.invokeOperation(operation(GET, "key", "")).toBuilder()
+                .setOperation(nestedBatch().toBuilder().setClientId("TestClientAAA"))
+                .build();
+        try {
+            serverProtocol.handleInvoke(invoke);
+            fail("Nested batch was sequenced");
+        } catch (IllegalArgumentException e) {
+            // the operation is not sequenced and does not block the following ones
+        }
+        CommitResult result = clientProtocol_BBB.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", ""))));
+        assertEquals(result.getResult().getStatus(), SUCCESS);
+        assertEquals(result.getCommit().getSequenceNumber(), 2);
+    }
+
+    @Test
+    public void testReplyIsBuiltFromSnapshot() throws Exception {
+        CommitResult put = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+        Supplier<Messages.Reply> get = serverProtocol.prepareInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", "")));
+
+        // the state changes before the reply is built
+        applyCommitted(clientProtocol_AAA);
+
+        // the proof matches the authenticator the reply was sequenced against
+        CommitResult result = clientProtocol_BBB.handleReply(get.get());
+        assertEquals(result.getResult().getStatus(), SUCCESS);
+        assertEquals(result.getResult().getResultType(), KEY_NOT_FOUND);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Verification failed.*")
+    public void testCorruptedDeltaOperationOfLaggingClient() throws Exception {
+        CommitResult first = clientProtocol_BBB.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", ""))));
+        serverProtocol.handleCommit(first.getCommit());
+        applyCommitted(clientProtocol_BBB);
+
+        for (int i = 0; i < 20; i++) {
+            CommitResult put = clientProtocol_AAA.handleReply(
+                    serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key" + i, "value"))));
+            serverProtocol.handleCommit(put.getCommit());
+            applyCommitted(clientProtocol_AAA);
+        }
+
+        // the delta operations are verified in parallel, the chain is extended with the original operation
+        Messages.Reply.Builder reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", ""))).toBuilder();
+        reply.getDeltaOperationsBuilder(10).setSignature(reply.getDeltaOperations(11).getSignature());
+        clientProtocol_BBB.handleReply(reply.build());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Verification failed.*")
+    public void testForgedValueOfPendingOperation() throws Exception {
+        serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(PUT, "key", "value")));
+
+        // the signature covers the UUID carried by the operation but not its value
+        Messages.Reply.Builder reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", ""))).toBuilder();
+        reply.getPendingOperationsBuilder(0).setValue("forged");
+        clientProtocol_AAA.handleReply(reply.build());
+    }
+
+    @Test
+    public void testFailedOperationIsAborted() throws Exception {
+        KVSOperationProcessor failingProcessor = new KVSCompatibleOperationProcessor(cryptoUtils) {
+            @Override
+            public QueryResult query(KVSState state, List<Operation> operations) {
+                checkState(!operations.get(operations.size() - 1).getKey().equals("fail"), "Storage failure");
+                return super.query(state, operations);
+            }
+        };
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                failingProcessor, new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+
+        // the sequenced operation is answered with an error instead of blocking all later ones
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "fail", "value")));
+        assertTrue(reply.getError().contains("Storage failure"));
+        CommitResult failed = clientProtocol_AAA.handleReply(reply);
+        assertEquals(failed.getResult().getStatus(), ABORT);
+        assertEquals(failed.getCommit().getStatus(), ABORT);
+        serverProtocol.handleCommit(failed.getCommit());
+        applyCommitted(clientProtocol_AAA);
+
+        CommitResult result = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", ""))));
+        assertEquals(result.getResult().getStatus(), SUCCESS);
+        assertEquals(result.getCommit().getSequenceNumber(), 3);
+    }
+
+    @Test
+    public void testFailedStoreLeavesStateUnchanged() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean();
+        ValueStore valueStore = new ValueStore() {
+            @Override
+            public CharSequence store(String value) {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("No space left on device"));
+                }
+                return value;
+            }
+
+            @Override
+            public void clear() {
+            }
+        };
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(valueStore),
+                new KVSCompatibleOperationProcessor(cryptoUtils), new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+
+        CommitResult put = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+        Messages.CommitAuth commitAuth = clientProtocol_AAA.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable());
+        Snapshot before = serverProtocol.snapshot();
+
+        failing.set(true);
+        try {
+            serverProtocol.handleCommitAuth(commitAuth);
+            fail("Store failure was ignored");
+        } catch (UncheckedIOException e) {
+            assertEquals(serverProtocol.snapshot(), before);
+        }
+
+        // the commit authentication can be applied once the store recovered
+        failing.set(false);
+        serverProtocol.handleCommitAuth(commitAuth);
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        assertEquals(clientProtocol_AAA.handleReply(reply).getResult().getValues(0), "value");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testUnknownInvocation() throws Exception {
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(GET, "key", "")));
+        clientProtocol_AAA.handleReply(reply);
+        clientProtocol_AAA.handleReply(reply);
+    }
+
+    private void execute(ClientProtocolImpl clientProtocol, Operation operation) throws Exception {
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol.invokeOperation(operation));
+        serverProtocol.handleCommit(clientProtocol.handleReply(reply).getCommit());
+        applyCommitted(clientProtocol);
+    }
+
+    private void applyCommitted(ClientProtocolImpl clientProtocol) throws Exception {
+        serverProtocol.handleCommitAuth(clientProtocol.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+    }
+
+    private static Operation nestedBatch() {
+        return Operation.newBuilder().setOpCode(BATCH)
+                .addOperations(Operation.newBuilder().setOpCode(BATCH).addOperations(operation(PUT, "key", "value")))
+                .build();
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder().setOpCode(opCode).setKey(key).setValue(value).build();
+    }
+}
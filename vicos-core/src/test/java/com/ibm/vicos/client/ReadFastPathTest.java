@@ -0,0 +1,199 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.client;
+
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Journal.Snapshot;
+import com.ibm.vicos.common.Messages;
+import com.ibm.vicos.common.Messages.CommitResult;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Result;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.exceptions.IntegrityException;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+import com.ibm.vicos.server.ServerProtocolImpl;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.Operations.OpCode.GET;
+import static com.ibm.vicos.common.Operations.OpCode.LIST;
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.Operations.Status.SUCCESS;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class ReadFastPathTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
+    private ClientProtocolImpl clientProtocol_AAA;
+    private ClientProtocolImpl clientProtocol_BBB;
+    private ServerProtocolImpl serverProtocol;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier_AAA = ClientIdentifier.builder()
+                .setClientId("TestClientAAA")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientIdentifier clientIdentifier_BBB = ClientIdentifier.builder()
+                .setClientId("TestClientBBB")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier_AAA.getClientId(), clientIdentifier_AAA);
+        clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
+
+        clientProtocol_AAA = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocol_BBB = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                operationProcessor, new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+    }
+
+    @Test
+    public void testReadIsNotSequenced() throws Exception {
+        put(clientProtocol_AAA, "key", "value");
+
+        Result get = read(clientProtocol_BBB, operation(GET, "key"));
+        assertEquals(get.getStatus(), SUCCESS);
+        assertEquals(get.getValues(0), "value");
+        Result list = read(clientProtocol_BBB, operation(LIST, ""));
+        assertEquals(list.getValuesList().size(), 1);
+
+        // init and put are the only sequenced operations
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key")));
+        assertEquals(reply.getAssignedSequenceNumber(), 3);
+        assertEquals(clientProtocol_BBB.handleReply(reply).getResult().getValues(0), "value");
+    }
+
+    @Test
+    public void testReadLeavesServerStateUnchanged() throws Exception {
+        put(clientProtocol_AAA, "key", "value");
+
+        // reads are not journaled, a recovered server must end up in the same state
+        Snapshot before = serverProtocol.snapshot();
+        read(clientProtocol_BBB, operation(GET, "key"));
+        assertEquals(serverProtocol.snapshot(), before);
+    }
+
+    @Test
+    public void testReadSeesOwnPendingWrite() throws Exception {
+        CommitResult put = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+
+        assertEquals(read(clientProtocol_AAA, operation(GET, "key")).getValues(0), "value");
+    }
+
+    @Test
+    public void testReadConflictingWithPendingWrite() throws Exception {
+        serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value")));
+
+        assertNull(read(clientProtocol_BBB, operation(GET, "key")));
+        assertEquals(read(clientProtocol_BBB, operation(GET, "other")).getStatus(), SUCCESS);
+    }
+
+    @Test
+    public void testStaleReadReply() throws Exception {
+        Messages.ReadReply stale = serverProtocol.prepareRead(clientProtocol_BBB.invokeRead(operation(GET, "key"))).get();
+        put(clientProtocol_AAA, "key", "value");
+        read(clientProtocol_BBB, operation(GET, "key"));
+
+        assertNull(clientProtocol_BBB.handleReadReply(stale));
+    }
+
+    @Test
+    public void testReadReplyPrecedingOwnOperation() throws Exception {
+        Messages.ReadReply stale = serverProtocol.prepareRead(clientProtocol_AAA.invokeRead(operation(GET, "key"))).get();
+        CommitResult put = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+
+        // the reply extends the view of the client but misses its own write
+        assertNull(clientProtocol_AAA.handleReadReply(stale));
+    }
+
+    @Test
+    public void testReadReplyWithoutPendingOperations() throws Exception {
+        Messages.ReadReply before = serverProtocol.prepareRead(clientProtocol_BBB.invokeRead(operation(GET, "key"))).get();
+        CommitResult put = clientProtocol_AAA.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+
+        // the server hides the pending write and answers from the applied state only
+        Messages.ReadReply reply = serverProtocol.prepareRead(clientProtocol_AAA.invokeRead(operation(GET, "key"))).get();
+        Messages.ReadReply stripped = reply.toBuilder()
+                .clearPendingOperations()
+                .setResult(before.getResult())
+                .setAuxiliaryData(before.getAuxiliaryData())
+                .build();
+        assertNull(clientProtocol_AAA.handleReadReply(stripped));
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testTamperedReadResult() throws Exception {
+        put(clientProtocol_AAA, "key", "value");
+
+        Messages.ReadReply reply = serverProtocol.prepareRead(clientProtocol_BBB.invokeRead(operation(GET, "key"))).get();
+        Messages.ReadReply.Builder tampered = reply.toBuilder();
+        tampered.getResultBuilder().setValues(0, "forged");
+        clientProtocol_BBB.handleReadReply(tampered.build());
+    }
+
+    private void put(ClientProtocolImpl clientProtocol, String key, String value) throws Exception {
+        CommitResult put = clientProtocol.handleReply(
+                serverProtocol.handleInvoke(clientProtocol.invokeOperation(operation(PUT, key, value))));
+        serverProtocol.handleCommit(put.getCommit());
+        serverProtocol.handleCommitAuth(clientProtocol.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+    }
+
+    private Result read(ClientProtocolImpl clientProtocol, Operation operation) throws Exception {
+        return clientProtocol.handleReadReply(serverProtocol.prepareRead(clientProtocol.invokeRead(operation)).get());
+    }
+
+    private static Operation operation(OpCode opCode, String key) {
+        return operation(opCode, key, "");
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder().setOpCode(opCode).setKey(key).setValue(value).build();
+    }
+}
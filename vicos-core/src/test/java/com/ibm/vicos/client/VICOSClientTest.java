@@ -0,0 +1,141 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.KeyNotFoundException;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Result;
+import com.ibm.vicos.common.Operations.ResultType;
+import com.ibm.vicos.common.util.Utils;
+import com.ibm.vicos.exceptions.FlowControlException;
+import com.typesafe.config.ConfigFactory;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.actor.UntypedActor;
+
+import static com.ibm.vicos.common.Operations.Status.ABORT;
+import static com.ibm.vicos.common.Operations.Status.SUCCESS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class VICOSClientTest {
+
+    private final ClientIdentifier clientIdentifier = ClientIdentifier.builder().setClientId("TestClient").build();
+    private ActorSystem system;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        system = ActorSystem.create("VICOSClientTest", ConfigFactory.parseString(
+                "akka.actor.provider = \"akka.actor.LocalActorRefProvider\"").withFallback(ConfigFactory.load()));
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        system.terminate();
+    }
+
+    @Test
+    public void testAsyncRetriesAreScheduled() throws Exception {
+        VICOSClient client = client(new Status.Failure(new FlowControlException("busy")),
+                Result.newBuilder().setStatus(ABORT).build(),
+                Result.newBuilder().setStatus(SUCCESS).addValues("value").build());
+
+        CompletableFuture<String> value = client.getAsync("key");
+        assertEquals(value.get(10, TimeUnit.SECONDS), "value");
+    }
+
+    @Test
+    public void testAsyncKeyNotFound() throws Exception {
+        VICOSClient client = client(Result.newBuilder().setStatus(SUCCESS).setResultType(ResultType.KEY_NOT_FOUND).build());
+
+        try {
+            client.getAsync("key").get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof KeyNotFoundException);
+            return;
+        }
+        throw new AssertionError("KeyNotFoundException expected");
+    }
+
+    @Test(expectedExceptions = KeyNotFoundException.class)
+    public void testBlockingKeyNotFound() throws Exception {
+        VICOSClient client = client(Result.newBuilder().setStatus(SUCCESS).setResultType(ResultType.KEY_NOT_FOUND).build());
+        client.get("key");
+    }
+
+    @Test
+    public void testOperationsAreRoutedByShard() throws Exception {
+        String key = "container/object";
+        int shard = Utils.shardOf(key, 2);
+        List<ActorRef> shards = Lists.newArrayList(null, null);
+        shards.set(shard, scripted(
+                Result.newBuilder().setStatus(SUCCESS).addValues("value").build(),
+                Result.newBuilder().setStatus(SUCCESS).addValues("b").addValues("d").build()));
+        shards.set(1 - shard, scripted(Result.newBuilder().setStatus(SUCCESS).addValues("a").addValues("c").build()));
+        VICOSClient client = new VICOSClient(shards, clientIdentifier, system, true);
+
+        assertEquals(client.get(key), "value");
+        assertEquals(ImmutableList.copyOf(client.list()), ImmutableList.of("a", "b", "c", "d"));
+    }
+
+    private VICOSClient client(Object... responses) {
+        return new VICOSClient(ImmutableList.of(scripted(responses)), clientIdentifier, system, true);
+    }
+
+    private ActorRef scripted(Object... responses) {
+        return system.actorOf(Props.create(ScriptedClientActor.class, ImmutableList.copyOf(responses)));
+    }
+
+    /**
+     * Answers the n-th operation with the n-th scripted response.
+     */
+    static class ScriptedClientActor extends UntypedActor {
+
+        private final List<Object> responses;
+        private int next = 0;
+
+        ScriptedClientActor(List<Object> responses) {
+            this.responses = responses;
+        }
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (message instanceof Operation) {
+                getSender().tell(responses.get(next++), getSelf());
+            } else {
+                unhandled(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.client;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Messages.CommitResult;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Result;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+import com.ibm.vicos.server.ServerProtocolImpl;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.Operations.OpCode.GET;
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+
+public class VerifiedSignatureCacheTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final Multiset<String> verifiedSignatures = ConcurrentHashMultiset.create();
+    private final Multiset<String> generatedUUIDs = ConcurrentHashMultiset.create();
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES")) {
+        @Override
+        public boolean verify(String signature, Iterable<? extends Serializable> items, ClientIdentifier clientIdentifier) {
+            verifiedSignatures.add(signature);
+            return super.verify(signature, items, clientIdentifier);
+        }
+
+        @Override
+        public String generateOperationUUID(Operation operation, String clientId) {
+            generatedUUIDs.add(operation.getKey());
+            return super.generateOperationUUID(operation, clientId);
+        }
+    };
+    private ClientProtocolImpl clientProtocol_AAA;
+    private ClientProtocolImpl clientProtocol_BBB;
+    private ServerProtocolImpl serverProtocol;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        verifiedSignatures.clear();
+        generatedUUIDs.clear();
+        KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier_AAA = ClientIdentifier.builder()
+                .setClientId("TestClientAAA")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientIdentifier clientIdentifier_BBB = ClientIdentifier.builder()
+                .setClientId("TestClientBBB")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier_AAA.getClientId(), clientIdentifier_AAA);
+        clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
+
+        clientProtocol_AAA = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocol_BBB = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                operationProcessor, new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+    }
+
+    @Test
+    public void testCommitSignatureIsVerifiedOnce() throws Exception {
+        CommitResult put = clientProtocol_BBB.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+
+        final String signature = put.getCommit().getSignature();
+
+        // the committed put is pending for the first read and a delta operation for the second one
+        read(clientProtocol_AAA, operation(GET, "key"));
+        assertEquals(verifiedSignatures.count(signature), 1);
+        serverProtocol.handleCommitAuth(clientProtocol_BBB.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+
+        final int verified = verifiedSignatures.count(signature);
+        assertEquals(read(clientProtocol_AAA, operation(GET, "key")).getValues(0), "value");
+        assertEquals(verifiedSignatures.count(signature), verified);
+    }
+
+    @Test
+    public void testOperationUUIDIsGeneratedOncePerClient() throws Exception {
+        CommitResult put = clientProtocol_BBB.handleReply(
+                serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(PUT, "key", "value"))));
+        serverProtocol.handleCommit(put.getCommit());
+        serverProtocol.handleCommitAuth(clientProtocol_BBB.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+        assertEquals(generatedUUIDs.count("key"), 1);
+
+        // checked against the content when the put is received for the first time
+        read(clientProtocol_AAA, operation(GET, "key"));
+        read(clientProtocol_AAA, operation(GET, "key"));
+        assertEquals(generatedUUIDs.count("key"), 2);
+    }
+
+    private Result read(ClientProtocolImpl clientProtocol, Operation operation) throws Exception {
+        return clientProtocol.handleReadReply(serverProtocol.prepareRead(clientProtocol.invokeRead(operation)).get());
+    }
+
+    private static Operation operation(OpCode opCode, String key) {
+        return operation(opCode, key, "");
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder().setOpCode(opCode).setKey(key).setValue(value).build();
+    }
+}
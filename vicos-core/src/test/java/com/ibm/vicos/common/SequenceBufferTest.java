@@ -0,0 +1,81 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.common;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import org.testng.annotations.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+public class SequenceBufferTest {
+
+    @Test
+    public void testAppendAndRange() throws Exception {
+        SequenceBuffer<String> buffer = new SequenceBuffer<>(4);
+        for (long i = 1; i <= 100; i++) {
+            buffer.put(i, "value" + i);
+        }
+        assertEquals(buffer.size(), 100);
+        assertEquals(buffer.get(42L), "value42");
+        assertNull(buffer.get(101L));
+        assertEquals(Lists.newArrayList(buffer.range(98, 200)), ImmutableList.of("value98", "value99", "value100"));
+        assertEquals(buffer.range(10, 19).size(), 10);
+    }
+
+    @Test
+    public void testTruncateWrapsAround() throws Exception {
+        SequenceBuffer<String> buffer = new SequenceBuffer<>(8);
+        for (long i = 1; i <= 1000; i++) {
+            buffer.put(i, "value" + i);
+            buffer.truncate(i - 2);
+        }
+        assertEquals(buffer.size(), 3);
+        assertEquals(buffer.firstSequenceNumber(), 998);
+        assertEquals(buffer.lastSequenceNumber(), 1000);
+        assertEquals(Lists.newArrayList(buffer.keySet()), ImmutableList.of(998L, 999L, 1000L));
+    }
+
+    @Test
+    public void testSparseEntries() throws Exception {
+        SequenceBuffer<String> buffer = new SequenceBuffer<>();
+        buffer.put(10L, "a");
+        buffer.put(5L, "b");
+        buffer.put(20L, "c");
+        assertEquals(Lists.newArrayList(buffer.values()), ImmutableList.of("b", "a", "c"));
+
+        buffer.remove(5L);
+        assertEquals(buffer.firstSequenceNumber(), 10);
+        buffer.remove(20L);
+        assertEquals(buffer.lastSequenceNumber(), 10);
+        assertFalse(buffer.containsKey(20L));
+
+        buffer.truncate(11);
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test(expectedExceptions = NoSuchElementException.class)
+    public void testEmptyHasNoFirst() throws Exception {
+        new SequenceBuffer<String>().firstSequenceNumber();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import org.testng.annotations.Test;
+
+import java.security.MessageDigest;
+
+import static org.testng.Assert.assertEquals;
+
+public class Blake2bTest {
+
+    @Test
+    public void testVectors() throws Exception {
+        assertEquals(HashCode.fromBytes(new Blake2b(64).digest("abc".getBytes(Charsets.US_ASCII))).toString(),
+                "ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d1"
+                        + "7d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923");
+        assertEquals(HashCode.fromBytes(new Blake2b(64).digest()).toString(),
+                "786a02f742015903c6c6fd852552d272912f4740e15847618a86e217f71f5419"
+                        + "d25e1031afee585313896444934eb04b903a685b1448b755d56f701afe9be2ce");
+        assertEquals(Blake2b.blake2b256().hashString("abc", Charsets.US_ASCII).toString(),
+                "bddd813c634239723171ef3fee98579b94964e3bb1cb3e427262c8c068d52319");
+    }
+
+    @Test
+    public void testUpdatesAcrossBlocks() throws Exception {
+        byte[] input = new byte[768];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) i;
+        }
+        String expected = "b8007121274217790e2923e0ad7027986e5a99d5531ef6ae7d294140fc81615d";
+        assertEquals(Blake2b.blake2b256().hashBytes(input).toString(), expected);
+
+        // split at and around block boundaries, the digest is reset after each use
+        MessageDigest digest = new Blake2b(32);
+        for (int split : new int[]{0, 1, 127, 128, 129, 256, 767, 768}) {
+            digest.update(input, 0, split);
+            for (int i = split; i < Math.min(split + 3, input.length); i++) {
+                digest.update(input[i]);
+            }
+            digest.update(input, Math.min(split + 3, input.length), input.length - Math.min(split + 3, input.length));
+            assertEquals(HashCode.fromBytes(digest.digest()).toString(), expected, "split " + split);
+        }
+    }
+
+    @Test
+    public void testPrimitivesAreHashedLikeGuava() throws Exception {
+        HashFunction sha256 = DigestHashFunction.of("SHA-256");
+        assertEquals(sha256.bits(), 256);
+        assertEquals(sha256.newHasher().putInt(42).putLong(-1L).putChar('x').putString("value", Charsets.UTF_8).hash(),
+                Hashing.sha256().newHasher().putInt(42).putLong(-1L).putChar('x').putString("value", Charsets.UTF_8).hash());
+    }
+}
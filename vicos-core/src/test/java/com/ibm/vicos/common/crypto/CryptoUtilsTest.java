@@ -0,0 +1,113 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.collect.ImmutableList;
+
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.Operations.Status;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static com.ibm.vicos.config.ConfigHelper.returnHashFunction;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class CryptoUtilsTest {
+
+    private static final List<String> ITEMS = ImmutableList.of("COMMIT", "uuid", "TestClient", "42");
+
+    @DataProvider
+    public Object[][] cryptoUtils() {
+        return new Object[][]{
+                {new RSACryptoUtilsImpl()},
+                {new ECDSACryptoUtilsImpl()},
+                {new Ed25519CryptoUtilsImpl()},
+                {new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"))}
+        };
+    }
+
+    @Test(dataProvider = "cryptoUtils")
+    public void testEnginesAreReusedAcrossThreads(CryptoUtils cryptoUtils) throws Exception {
+        ClientIdentifier clientIdentifier = identifier(cryptoUtils);
+        String signature = cryptoUtils.sign(ITEMS, clientIdentifier);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = ImmutableList.of(
+                    executor.submit(() -> cryptoUtils.verify(signature, ITEMS, clientIdentifier)),
+                    executor.submit(() -> cryptoUtils.verify(cryptoUtils.sign(ITEMS, clientIdentifier), ITEMS, clientIdentifier)),
+                    executor.submit(() -> !cryptoUtils.verify(signature, ITEMS.subList(1, 4), clientIdentifier)),
+                    executor.submit(() -> cryptoUtils.verify(signature, ITEMS, clientIdentifier)));
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cryptoUtils.verify(signature, ITEMS, clientIdentifier));
+    }
+
+    @Test(dataProvider = "cryptoUtils")
+    public void testMalformedSignature(CryptoUtils cryptoUtils) throws Exception {
+        ClientIdentifier clientIdentifier = identifier(cryptoUtils);
+
+        assertFalse(cryptoUtils.verify("not base64!", ITEMS, clientIdentifier));
+        assertFalse(cryptoUtils.verify("AAAA", ITEMS, clientIdentifier));
+        // a failed verification leaves the engine usable
+        assertTrue(cryptoUtils.verify(cryptoUtils.sign(ITEMS, clientIdentifier), ITEMS, clientIdentifier));
+    }
+
+    @Test(dataProvider = "cryptoUtils")
+    public void testEncodingIsUnambiguous(CryptoUtils cryptoUtils) throws Exception {
+        ClientIdentifier clientIdentifier = identifier(cryptoUtils);
+        List<String> items = ImmutableList.of("COMMITuuid", "TestClient", "42");
+
+        assertNotEquals(cryptoUtils.hash(ImmutableList.of("ab", "c")), cryptoUtils.hash(ImmutableList.of("a", "bc")));
+        assertNotEquals(cryptoUtils.hash(ImmutableList.of(42L)), cryptoUtils.hash(ImmutableList.of("42")));
+        assertFalse(cryptoUtils.verify(cryptoUtils.sign(ITEMS, clientIdentifier), items, clientIdentifier));
+        assertFalse(cryptoUtils.verify(cryptoUtils.sign(ImmutableList.of("COMMIT", 42L, Status.SUCCESS), clientIdentifier),
+                ImmutableList.of("COMMIT", "42", "SUCCESS"), clientIdentifier));
+        assertTrue(cryptoUtils.verify(cryptoUtils.sign(ImmutableList.of("COMMIT", 42L, Status.SUCCESS), clientIdentifier),
+                ImmutableList.of("COMMIT", 42L, Status.SUCCESS), clientIdentifier));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownHashAlgorithm() throws Exception {
+        returnHashFunction("SHA-1");
+    }
+
+    private static ClientIdentifier identifier(CryptoUtils cryptoUtils) throws Exception {
+        KeyPair keyPair = cryptoUtils.generateKeyPair();
+        return ClientIdentifier.builder()
+                .setClientId("TestClient")
+                .setPrivateKey(keyPair.getPrivate())
+                .setPublicKey(keyPair.getPublic())
+                .build();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.crypto;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class HashInputStreamTest {
+
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    @Test
+    public void testHashOfReadBytes() throws Exception {
+        HashInputStream in = new HashInputStream(new ByteArrayInputStream(DATA), Blake2b.blake2b256());
+        byte[] buffer = new byte[DATA.length + 16];
+        // read into the middle of the buffer
+        int total = 0;
+        int read;
+        while ((read = in.read(buffer, 7, 5)) > 0) {
+            total += read;
+        }
+        assertEquals(total, DATA.length);
+        assertTrue(in.isDone());
+        assertEquals(in.getHash(), Blake2b.blake2b256().hashBytes(DATA).asBytes());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class, expectedExceptionsMessageRegExp = "Hash validation failed.*")
+    public void testValidation() throws Exception {
+        InputStream in = new HashInputStream(new ByteArrayInputStream(DATA), Hashing.sha1().hashBytes(DATA).asBytes(), "SHA-256");
+        ByteStreams.toByteArray(in);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.common.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.Ed25519CryptoUtilsImpl;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.testng.annotations.Test;
+
+import java.security.KeyPair;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ClientIdentityLoaderTest {
+
+    private static final List<String> ITEMS = ImmutableList.of("COMMIT", "uuid", "TestClient", "42");
+    private final CryptoUtils cryptoUtils = new Ed25519CryptoUtilsImpl();
+    private final ClientIdentityLoader identityLoader = new ClientIdentityLoader(cryptoUtils);
+
+    @Test
+    public void testLoadKeys() throws Exception {
+        KeyPair abc = cryptoUtils.generateKeyPair();
+        KeyPair xyz = cryptoUtils.generateKeyPair();
+        Config keys = ConfigFactory.parseMap(ImmutableMap.of(
+                "abc.public", Utils.base64encoding(abc.getPublic().getEncoded()),
+                "abc.private", Utils.base64encoding(abc.getPrivate().getEncoded()),
+                "xyz.public", Utils.base64encoding(xyz.getPublic().getEncoded())));
+
+        ClientIdentifier clientIdentifier = identityLoader.loadClientIdentifier("abc", keys);
+        ClientLookupMap clientLookupMap = identityLoader.loadClientLookupMap(keys);
+
+        assertEquals(clientLookupMap.keySet(), ImmutableList.of("abc", "xyz"));
+        assertEquals(clientLookupMap.get("xyz").getPublicKey(), xyz.getPublic());
+        assertNull(clientLookupMap.get("abc").getPrivateKey());
+        assertTrue(cryptoUtils.verify(cryptoUtils.sign(ITEMS, clientIdentifier), ITEMS, clientLookupMap.get("abc")));
+    }
+}
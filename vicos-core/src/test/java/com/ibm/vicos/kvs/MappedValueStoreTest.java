@@ -0,0 +1,116 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MappedValueStoreTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private Path directory;
+    private MappedValueStore valueStore;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("vicos-state");
+        valueStore = new MappedValueStore(directory.toString(), SEGMENT_SIZE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Files.walk(directory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testValuesSpanningSegments() throws Exception {
+        KVSState state = new KVSState(valueStore);
+        KVSState expected = new KVSState(Maps.newTreeMap());
+        for (int i = 0; i < 200; i++) {
+            String value = "välue-" + i + "-" + Strings.repeat("x", i % 20);
+            state.put("key" + i, value);
+            expected.put("key" + i, value);
+        }
+        state.remove("key7");
+        expected.remove("key7");
+
+        CryptoUtils cryptoUtils = new RSACryptoUtilsImpl();
+        assertEquals(state.items(), expected.items());
+        assertEquals(state.tree().rootHash(cryptoUtils), expected.tree().rootHash(cryptoUtils));
+        assertEquals(state.get("key42"), expected.get("key42"));
+    }
+
+    @Test
+    public void testClearKeepsPreviousCopies() throws Exception {
+        KVSState state = new KVSState(valueStore);
+        state.put("key", "value");
+        KVSState copy = state.clone();
+
+        state.init();
+        state.put("key", "other");
+
+        assertEquals(copy.get("key"), "value");
+        assertEquals(state.get("key"), "other");
+    }
+
+    @Test
+    public void testSegmentsOfReleasedValuesAreReused() throws Exception {
+        KVSState state = new KVSState(valueStore);
+        state.put("kept", "value");
+        KVSState copy = state.clone();
+
+        // two values fill a segment, every put releases the previous value of the key
+        for (int i = 0; i < 1000; i++) {
+            state.put("key", i + Strings.repeat("x", SEGMENT_SIZE / 2 - 8));
+            if (i % 100 == 0) {
+                System.gc();
+            }
+        }
+
+        assertTrue(valueStore.segmentCount() < 100, "Mapped segments " + valueStore.segmentCount());
+        assertEquals(copy.get("kept"), "value");
+        assertEquals(state.get("key"), 999 + Strings.repeat("x", SEGMENT_SIZE / 2 - 8));
+    }
+
+    @Test
+    public void testRestoreFromSnapshot() throws Exception {
+        KVSState state = new KVSState(valueStore);
+        state.put("key1", "value1");
+        state.put("key2", "value2");
+
+        KVSState restored = new KVSState(new MappedValueStore(directory.resolve("restored").toString(), SEGMENT_SIZE));
+        restored.restore(state.toByteString());
+
+        assertEquals(restored.items(), state.items());
+    }
+}
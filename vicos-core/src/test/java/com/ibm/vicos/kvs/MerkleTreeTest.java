@@ -0,0 +1,223 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.ADS.ProofNode;
+import com.ibm.vicos.common.OperationProcessor.AuthExecResult;
+import com.ibm.vicos.common.OperationProcessor.QueryResult;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.ResultType;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MerkleTreeTest {
+
+    private static final int ITEMS = 1000;
+    private CryptoUtils cryptoUtils;
+    private KVSOperationProcessor operationProcessor;
+    private KVSState state;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cryptoUtils = new RSACryptoUtilsImpl();
+        operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+        state = new KVSState(Maps.newTreeMap());
+        for (int i = 0; i < ITEMS; i++) {
+            state.put("key" + i, "value" + i);
+        }
+    }
+
+    @Test
+    public void testEmptyRootHash() throws Exception {
+        assertEquals(new MerkleTree().rootHash(cryptoUtils), cryptoUtils.hash(ImmutableList.of()));
+    }
+
+    @Test
+    public void testRootHashIsIndependentOfHistory() throws Exception {
+        List<Integer> order = Lists.newArrayList();
+        for (int i = 0; i < ITEMS; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order);
+
+        MerkleTree tree = new MerkleTree();
+        tree.put("extra", "value");
+        order.forEach(i -> tree.put("key" + i, "value" + i));
+        tree.remove("extra");
+
+        assertEquals(tree.rootHash(cryptoUtils), state.tree().rootHash(cryptoUtils));
+        assertEquals(tree.list(), state.list());
+    }
+
+    @Test
+    public void testProofIsLogarithmic() throws Exception {
+        QueryResult queryResult = operationProcessor.query(state, ImmutableList.of(operation(OpCode.GET, "key42", "")));
+        assertEquals(queryResult.getResult().getValues(0), "value42");
+        assertTrue(queryResult.getAuxiliaryData().getProof().getNodesCount() < ITEMS / 10,
+                "Proof size " + queryResult.getAuxiliaryData().getProof().getNodesCount());
+        assertEquals(queryResult.getAuxiliaryData().getData().size(), 0);
+    }
+
+    @Test
+    public void testQueryLeavesStateUnchanged() throws Exception {
+        String rootHash = state.tree().rootHash(cryptoUtils);
+        List<Operation> operations = ImmutableList.of(
+                operation(OpCode.PUT, "key1", "other"),
+                operation(OpCode.DELETE, "key2", ""),
+                operation(OpCode.GET, "key1", ""));
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        assertEquals(queryResult.getResult().getValues(0), "other");
+        assertEquals(state.get("key1"), "value1");
+        assertEquals(state.get("key2"), "value2");
+        assertEquals(state.tree().rootHash(cryptoUtils), rootHash);
+    }
+
+    @Test
+    public void testAuthexecMatchesServerState() throws Exception {
+        List<Operation> operations = ImmutableList.of(
+                operation(OpCode.PUT, "key1000", "value1000"),
+                operation(OpCode.DELETE, "key7", ""),
+                operation(OpCode.PUT, "key8", "other"),
+                operation(OpCode.GET, "key8", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(state.tree().rootHash(cryptoUtils))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        AuthExecResult authExecResult = operationProcessor.authexec(operations, authenticator,
+                queryResult.getResult(), queryResult.getAuxiliaryData());
+        assertTrue(authExecResult.isValid());
+
+        for (Operation operation : operations) {
+            state = operationProcessor.refresh(state, operation, AuxiliaryData.getDefaultInstance());
+        }
+        assertEquals(authExecResult.getAuthenticator().getValue(), state.tree().rootHash(cryptoUtils));
+    }
+
+    @Test
+    public void testBatchAuthexecMatchesServerState() throws Exception {
+        Operation batch = operation(OpCode.BATCH, "", "").toBuilder()
+                .addOperations(operation(OpCode.PUT, "key1000", "value1000"))
+                .addOperations(operation(OpCode.DELETE, "key7", ""))
+                .addOperations(operation(OpCode.GET, "key7", ""))
+                .addOperations(operation(OpCode.GET, "key1000", ""))
+                .build();
+        List<Operation> operations = ImmutableList.of(batch);
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(state.tree().rootHash(cryptoUtils))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        assertEquals(queryResult.getResult().getResultsCount(), 4);
+        assertEquals(queryResult.getResult().getResults(1).getValues(0), "value7");
+        assertEquals(queryResult.getResult().getResults(2).getResultType(), ResultType.KEY_NOT_FOUND);
+        assertEquals(queryResult.getResult().getResults(3).getValues(0), "value1000");
+        AuthExecResult authExecResult = operationProcessor.authexec(operations, authenticator,
+                queryResult.getResult(), queryResult.getAuxiliaryData());
+        assertTrue(authExecResult.isValid());
+        assertTrue(operationProcessor.isUpdateOperation(batch));
+
+        state = operationProcessor.refresh(state, batch, AuxiliaryData.getDefaultInstance());
+        assertEquals(authExecResult.getAuthenticator().getValue(), state.tree().rootHash(cryptoUtils));
+    }
+
+    @Test
+    public void testSeededTreeIsVerifiedWithTheSameSeed() throws Exception {
+        KVSState seeded = new KVSState(new HeapValueStore(), 42);
+        for (int i = 0; i < ITEMS; i++) {
+            seeded.put("key" + i, "value" + i);
+        }
+        assertEquals(seeded.list(), state.list());
+        assertNotEquals(seeded.tree().rootHash(cryptoUtils), state.tree().rootHash(cryptoUtils));
+
+        List<Operation> operations = ImmutableList.of(
+                operation(OpCode.PUT, "key1000", "value1000"),
+                operation(OpCode.DELETE, "key7", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(seeded.tree().rootHash(cryptoUtils))
+                .build();
+        KVSOperationProcessor seededProcessor = new KVSCompatibleOperationProcessor(new MerkleKVSDigest(cryptoUtils, 42));
+        QueryResult queryResult = seededProcessor.query(seeded, operations);
+        AuthExecResult authExecResult = seededProcessor.authexec(operations, authenticator,
+                queryResult.getResult(), queryResult.getAuxiliaryData());
+
+        for (Operation operation : operations) {
+            seeded = seededProcessor.refresh(seeded, operation, AuxiliaryData.getDefaultInstance());
+        }
+        assertEquals(authExecResult.getAuthenticator().getValue(), seeded.tree().rootHash(cryptoUtils));
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testTamperedProof() throws Exception {
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key42", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(state.tree().rootHash(cryptoUtils))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        AuxiliaryData.Builder proof = AuxiliaryData.newBuilder().mergeFrom(queryResult.getAuxiliaryData());
+        for (ProofNode.Builder node : proof.getProofBuilder().getNodesBuilderList()) {
+            if (node.getKey().equals("key42")) {
+                node.setValue("forged");
+            }
+        }
+
+        operationProcessor.authexec(operations, authenticator, queryResult.getResult(), proof.build());
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testIncompleteProof() throws Exception {
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(state.tree().rootHash(cryptoUtils))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, ImmutableList.of(operation(OpCode.GET, "key42", "")));
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key43", ""));
+
+        assertFalse(operationProcessor.authexec(operations, authenticator, queryResult.getResult(),
+                queryResult.getAuxiliaryData()).isValid());
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder()
+                .setOpCode(opCode)
+                .setKey(key)
+                .setValue(value)
+                .setClientId("TestClient")
+                .build();
+    }
+}
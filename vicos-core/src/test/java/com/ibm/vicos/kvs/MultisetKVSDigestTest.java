@@ -0,0 +1,205 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.kvs;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ADS.AuxiliaryData;
+import com.ibm.vicos.common.OperationProcessor.AuthExecResult;
+import com.ibm.vicos.common.OperationProcessor.QueryResult;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Status;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.MultisetHash;
+import com.ibm.vicos.common.crypto.RSACryptoUtilsImpl;
+import com.ibm.vicos.exceptions.IntegrityException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MultisetKVSDigestTest {
+
+    private static final int ITEMS = 100;
+    private CryptoUtils cryptoUtils;
+    private MultisetKVSDigest digest;
+    private KVSOperationProcessor operationProcessor;
+    private KVSState state;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cryptoUtils = new RSACryptoUtilsImpl();
+        digest = new MultisetKVSDigest(cryptoUtils);
+        operationProcessor = new KVSCompatibleOperationProcessor(digest);
+        state = new KVSState(Maps.newTreeMap());
+        for (int i = 0; i < ITEMS; i++) {
+            state.put("key" + i, "value" + i);
+        }
+    }
+
+    @Test
+    public void testMultisetHash() throws Exception {
+        MultisetHash empty = new MultisetHash(cryptoUtils);
+        assertEquals(empty.digest(), cryptoUtils.hash(ImmutableList.of()));
+
+        MultisetHash a = new MultisetHash(cryptoUtils);
+        a.add("x");
+        a.add("y");
+        a.add("z");
+        a.remove("y");
+
+        MultisetHash b = new MultisetHash(cryptoUtils);
+        b.add("z");
+        b.add("x");
+        assertEquals(a.digest(), b.digest());
+    }
+
+    @Test
+    public void testAuthexecMatchesServerState() throws Exception {
+        List<Operation> operations = ImmutableList.of(
+                operation(OpCode.PUT, "key100", "value100"),
+                operation(OpCode.DELETE, "key7", ""),
+                operation(OpCode.PUT, "key8", "other"),
+                operation(OpCode.GET, "key8", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(digestOf(state))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        AuthExecResult authExecResult = operationProcessor.authexec(operations, authenticator,
+                queryResult.getResult(), queryResult.getAuxiliaryData());
+        assertTrue(authExecResult.isValid());
+
+        for (Operation operation : operations) {
+            state = operationProcessor.refresh(state, operation, AuxiliaryData.getDefaultInstance());
+        }
+        assertEquals(authExecResult.getAuthenticator().getValue(), digestOf(state));
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testTamperedState() throws Exception {
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key42", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(digestOf(state))
+                .build();
+
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        AuxiliaryData.Builder auxiliaryData = AuxiliaryData.newBuilder().mergeFrom(queryResult.getAuxiliaryData());
+        auxiliaryData.getMutableData().put("key42", "forged");
+
+        operationProcessor.authexec(operations, authenticator, queryResult.getResult(), auxiliaryData.build());
+    }
+
+    @Test
+    public void testChangesSinceVerifiedState() throws Exception {
+        Authenticator base = verifyWholeState();
+
+        List<Operation> applied = ImmutableList.of(
+                committed(operation(OpCode.PUT, "key1", "changed"), 5),
+                committed(operation(OpCode.DELETE, "key2", ""), 6),
+                committed(operation(OpCode.PUT, "key100", "value100"), 7));
+        for (Operation operation : applied) {
+            state = operationProcessor.refresh(state, operation, AuxiliaryData.getDefaultInstance());
+        }
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(digestOf(state))
+                .setSequenceNumber(7)
+                .build();
+
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key1", ""), operation(OpCode.LIST, "", ""));
+        QueryResult queryResult = operationProcessor.query(state, operations, base, applied);
+        AuxiliaryData auxiliaryData = queryResult.getAuxiliaryData();
+        assertEquals(auxiliaryData.getBase(), base.getValue());
+        assertEquals(auxiliaryData.getData().keySet(), ImmutableSet.of("key1", "key100"));
+        assertEquals(auxiliaryData.getRemovedList(), ImmutableList.of("key2"));
+
+        AuthExecResult authExecResult = operationProcessor.authexec(operations, authenticator,
+                queryResult.getResult(), auxiliaryData);
+        assertTrue(authExecResult.isValid());
+        assertEquals(authExecResult.getAuthenticator().getValue(), authenticator.getValue());
+        assertEquals(operationProcessor.verifiedAuthenticator(), authenticator);
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testForgedChange() throws Exception {
+        Authenticator base = verifyWholeState();
+
+        List<Operation> applied = ImmutableList.of(committed(operation(OpCode.PUT, "key1", "changed"), 5));
+        state = operationProcessor.refresh(state, applied.get(0), AuxiliaryData.getDefaultInstance());
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(digestOf(state))
+                .setSequenceNumber(5)
+                .build();
+
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key3", ""));
+        QueryResult queryResult = operationProcessor.query(state, operations, base, applied);
+        AuxiliaryData.Builder auxiliaryData = AuxiliaryData.newBuilder().mergeFrom(queryResult.getAuxiliaryData());
+        auxiliaryData.getMutableData().put("key3", "forged");
+
+        operationProcessor.authexec(operations, authenticator, queryResult.getResult(), auxiliaryData.build());
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testUnknownBaseState() throws Exception {
+        digest.verifier(AuxiliaryData.newBuilder().setBase("unknown").build(), digestOf(state));
+    }
+
+    /**
+     * Verifies the whole state once, later replies may refer to it as base.
+     */
+    private Authenticator verifyWholeState() {
+        List<Operation> operations = ImmutableList.of(operation(OpCode.GET, "key0", ""));
+        Authenticator authenticator = Authenticator.newBuilder()
+                .setValue(digestOf(state))
+                .setSequenceNumber(4)
+                .build();
+        QueryResult queryResult = operationProcessor.query(state, operations);
+        assertTrue(operationProcessor.authexec(operations, authenticator, queryResult.getResult(),
+                queryResult.getAuxiliaryData()).isValid());
+        return operationProcessor.verifiedAuthenticator();
+    }
+
+    private String digestOf(KVSState state) {
+        MultisetHash multisetHash = new MultisetHash(cryptoUtils);
+        state.tree().forEach((key, value) -> multisetHash.add(key.length() + KVSState.ITEM_SEPARATOR + key + value));
+        return multisetHash.digest();
+    }
+
+    private static Operation committed(Operation operation, long sequenceNumber) {
+        return operation.toBuilder()
+                .setSequenceNumber(sequenceNumber)
+                .setStatus(Status.SUCCESS)
+                .build();
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder()
+                .setOpCode(opCode)
+                .setKey(key)
+                .setValue(value)
+                .setClientId("TestClient")
+                .build();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.server;
+
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.client.ClientProtocolImpl;
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Messages.CommitResult;
+import com.ibm.vicos.common.Messages.Reply;
+import com.ibm.vicos.common.Messages.UpdateAuth;
+import com.ibm.vicos.common.Operations.OpCode;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.Operations.OpCode.GET;
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.Operations.Status.ABORT;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class CoalescedUpdateAuthTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 8;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
+    private ClientProtocolImpl clientProtocol_AAA;
+    private ClientProtocolImpl clientProtocol_BBB;
+    private AtomicLong lastAppliedSeqNo;
+    private ServerProtocolImpl serverProtocol;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier_AAA = ClientIdentifier.builder()
+                .setClientId("TestClientAAA")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientIdentifier clientIdentifier_BBB = ClientIdentifier.builder()
+                .setClientId("TestClientBBB")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier_AAA.getClientId(), clientIdentifier_AAA);
+        clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
+
+        clientProtocol_AAA = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        clientProtocol_BBB = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+
+        lastAppliedSeqNo = new AtomicLong(0);
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), lastAppliedSeqNo, new KVSState(Maps.newTreeMap()),
+                operationProcessor, new SequenceBuffer<Operation>(), new SequenceBuffer<Authenticator>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+    }
+
+    @Test
+    public void testCommittedOperationsShareOneUpdateAuth() throws Exception {
+        Reply first = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "keyA", "valueA")));
+        Reply second = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(PUT, "keyB", "valueB")));
+        Reply third = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "keyC", "valueC")));
+        CommitResult firstResult = clientProtocol_AAA.handleReply(first);
+        CommitResult secondResult = clientProtocol_BBB.handleReply(second);
+        CommitResult thirdResult = clientProtocol_AAA.handleReply(third);
+        serverProtocol.handleCommit(firstResult.getCommit());
+        serverProtocol.handleCommit(secondResult.getCommit());
+        serverProtocol.handleCommit(thirdResult.getCommit());
+        long lastApplied = lastAppliedSeqNo.get();
+
+        UpdateAuth updateAuth = serverProtocol.uponNextCommittedOperationAvailable();
+        assertEquals(updateAuth.getPrecedingOperationsCount(), 2);
+        assertEquals(updateAuth.getOperation().getClientId(), "TestClientAAA");
+        assertNull(serverProtocol.uponNextCommittedOperationAvailable());
+
+        serverProtocol.handleCommitAuth(clientProtocol_AAA.handleUpdateAuth(updateAuth));
+        assertEquals(lastAppliedSeqNo.get(), lastApplied + 3);
+
+        Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "keyC", "")));
+        assertEquals(clientProtocol_BBB.handleReply(reply).getResult().getValues(0), "valueC");
+    }
+
+    @Test
+    public void testAbortedOperationsInRun() throws Exception {
+        Reply put = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(operation(PUT, "key", "value")));
+        Reply get = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", "")));
+        CommitResult putResult = clientProtocol_AAA.handleReply(put);
+        CommitResult getResult = clientProtocol_BBB.handleReply(get);
+        assertEquals(getResult.getResult().getStatus(), ABORT);
+        serverProtocol.handleCommit(putResult.getCommit());
+        serverProtocol.handleCommit(getResult.getCommit());
+
+        UpdateAuth updateAuth = serverProtocol.uponNextCommittedOperationAvailable();
+        assertEquals(updateAuth.getPrecedingOperationsCount(), 1);
+        assertEquals(updateAuth.getOperation().getClientId(), "TestClientBBB");
+        serverProtocol.handleCommitAuth(clientProtocol_BBB.handleUpdateAuth(updateAuth));
+
+        Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(operation(GET, "key", "")));
+        assertEquals(clientProtocol_BBB.handleReply(reply).getResult().getValues(0), "value");
+    }
+
+    private static Operation operation(OpCode opCode, String key, String value) {
+        return Operation.newBuilder().setOpCode(opCode).setKey(key).setValue(value).build();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ibm.vicos.server;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.client.ClientProtocolImpl;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Messages;
+import com.ibm.vicos.common.Messages.CommitResult;
+import com.ibm.vicos.common.Messages.Message;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.Operations.OpCode.DELETE;
+import static com.ibm.vicos.common.Operations.OpCode.GET;
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.Operations.Status.SUCCESS;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class FileServerJournalTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 10000;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
+    private KVSOperationProcessor operationProcessor;
+    private ClientProtocolImpl clientProtocol;
+    private ServerProtocolImpl serverProtocol;
+    private Path directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("vicos-journal");
+        operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier = ClientIdentifier.builder()
+                .setClientId("TestClient")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier.getClientId(), clientIdentifier);
+
+        clientProtocol = new ClientProtocolImpl(new SequenceBuffer<>(), new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        serverProtocol = newServerProtocol();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        Files.walk(directory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+
+    @Test
+    public void testRecoverFromLogAndSnapshot() throws Exception {
+        FileServerJournal journal = new FileServerJournal(directory.toString(), 4, 10);
+        journal.recover(serverProtocol);
+
+        Messages.Init init = clientProtocol.invokeInit();
+        serverProtocol.handleInit(init);
+        journal.append(Message.newBuilder().setType(Message.Type.INIT).setInit(init).build());
+
+        for (int i = 0; i < 10; i++) {
+            execute(journal, Operation.newBuilder().setOpCode(PUT).setKey("key" + i).setValue("value" + i).build());
+        }
+        execute(journal, Operation.newBuilder().setOpCode(DELETE).setKey("key3").build());
+        journal.close();
+
+        ServerProtocolImpl recovered = newServerProtocol();
+        new FileServerJournal(directory.toString(), 4, 10).recover(recovered);
+        assertEquals(recovered.snapshot(), serverProtocol.snapshot());
+    }
+
+    @Test
+    public void testRecoverWithTornTail() throws Exception {
+        FileServerJournal journal = new FileServerJournal(directory.toString(), 4, 1000);
+        journal.recover(serverProtocol);
+
+        Messages.Init init = clientProtocol.invokeInit();
+        serverProtocol.handleInit(init);
+        journal.append(Message.newBuilder().setType(Message.Type.INIT).setInit(init).build());
+        execute(journal, Operation.newBuilder().setOpCode(PUT).setKey("key").setValue("value").build());
+        journal.close();
+
+        Path segment = Files.list(directory)
+                .filter(file -> file.getFileName().toString().endsWith(".log"))
+                .max(Comparator.naturalOrder())
+                .get();
+        Files.write(segment, new byte[]{42, 1, 2}, StandardOpenOption.APPEND);
+
+        ServerProtocolImpl recovered = newServerProtocol();
+        new FileServerJournal(directory.toString(), 4, 1000).recover(recovered);
+        assertEquals(recovered.snapshot(), serverProtocol.snapshot());
+    }
+
+    @Test
+    public void testReplyLostBetweenSyncAndSend() throws Exception {
+        recoverPendingReply(false);
+    }
+
+    @Test
+    public void testReplyLostAfterSnapshot() throws Exception {
+        recoverPendingReply(true);
+    }
+
+    /**
+     * The invocation is durable but the server crashes before its reply is sent, the recovered server sends it.
+     */
+    private void recoverPendingReply(boolean snapshot) throws Exception {
+        FileServerJournal journal = new FileServerJournal(directory.toString(), 4, 1000);
+        journal.recover(serverProtocol);
+
+        Messages.Init init = clientProtocol.invokeInit();
+        serverProtocol.handleInit(init);
+        journal.append(Message.newBuilder().setType(Message.Type.INIT).setInit(init).build());
+        execute(journal, Operation.newBuilder().setOpCode(PUT).setKey("key").setValue("value").build());
+
+        Messages.Invoke invoke = clientProtocol.invokeOperation(Operation.newBuilder().setOpCode(GET).setKey("key").build());
+        serverProtocol.prepareInvoke(invoke);
+        journal.append(Message.newBuilder().setType(Message.Type.INVOKE).setInvoke(invoke).build());
+        journal.sync();
+        if (snapshot) {
+            journal.snapshot(serverProtocol.snapshot());
+        }
+        journal.close();
+
+        ServerProtocolImpl recovered = newServerProtocol();
+        new FileServerJournal(directory.toString(), 4, 1000).recover(recovered);
+        ListMultimap<String, Supplier<Messages.Reply>> replies = recovered.preparePendingReplies();
+        assertEquals(replies.size(), 1);
+
+        CommitResult result = clientProtocol.handleReply(replies.get(clientProtocol.getClientId()).get(0).get());
+        assertEquals(result.getResult().getStatus(), SUCCESS);
+        assertEquals(result.getResult().getValues(0), "value");
+
+        recovered.handleCommit(result.getCommit());
+        assertTrue(recovered.preparePendingReplies().isEmpty());
+        recovered.handleCommitAuth(clientProtocol.handleUpdateAuth(recovered.uponNextCommittedOperationAvailable()));
+    }
+
+    private void execute(ServerJournal journal, Operation operation) throws Exception {
+        Messages.Invoke invoke = clientProtocol.invokeOperation(operation);
+        Messages.Reply reply = serverProtocol.handleInvoke(invoke);
+        journal.append(Message.newBuilder().setType(Message.Type.INVOKE).setInvoke(invoke).build());
+
+        Messages.Commit commit = clientProtocol.handleReply(reply).getCommit();
+        serverProtocol.handleCommit(commit);
+        journal.append(Message.newBuilder().setType(Message.Type.COMMIT).setCommit(commit).build());
+
+        Messages.CommitAuth commitAuth = clientProtocol.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable());
+        serverProtocol.handleCommitAuth(commitAuth);
+        journal.append(Message.newBuilder().setType(Message.Type.COMMIT_AUTH).setCommitAuth(commitAuth).build());
+
+        if (journal.isBatchFull()) {
+            journal.sync();
+        }
+        if (journal.isSnapshotDue()) {
+            journal.snapshot(serverProtocol.snapshot());
+        }
+    }
+
+    private ServerProtocolImpl newServerProtocol() {
+        return new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                operationProcessor, new SequenceBuffer<>(), new SequenceBuffer<>(), MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+    }
+}
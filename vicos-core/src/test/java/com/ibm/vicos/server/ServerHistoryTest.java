@@ -0,0 +1,199 @@
+/*
+ * Copyright IBM Corp. 2016 All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ibm.vicos.server;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import com.ibm.vicos.client.ClientProtocolImpl;
+import com.ibm.vicos.common.ADS.Authenticator;
+import com.ibm.vicos.common.ClientIdentifier;
+import com.ibm.vicos.common.ClientLookupMap;
+import com.ibm.vicos.common.Messages;
+import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.Operations.Status;
+import com.ibm.vicos.common.SequenceBuffer;
+import com.ibm.vicos.common.crypto.CryptoUtils;
+import com.ibm.vicos.common.crypto.HMacCryptoUtilsImpl;
+import com.ibm.vicos.exceptions.IntegrityException;
+import com.ibm.vicos.kvs.KVSCompatibleOperationProcessor;
+import com.ibm.vicos.kvs.KVSOperationProcessor;
+import com.ibm.vicos.kvs.KVSState;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static com.ibm.vicos.common.Operations.OpCode.PUT;
+import static com.ibm.vicos.common.util.Utils.base64decoding;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class ServerHistoryTest {
+
+    private static final Integer MAX_PENDING_LIST = 128;
+    private static final Integer MAX_HISTORY = 5;
+    private static final Integer UPDATE_AUTH_MAX_OPERATIONS = 1;
+    private static final Integer PARALLEL_VERIFICATION_THRESHOLD = 2;
+    private final CryptoUtils cryptoUtils = new HMacCryptoUtilsImpl(new SecretKeySpec(base64decoding("GF2sVH7yEpPasdfDgenM/hDhux3dxuZb7sgl6NAYVTM="), "AES"));
+    private ClientProtocolImpl clientProtocol_AAA;
+    private ClientProtocolImpl clientProtocol_BBB;
+    private ServerProtocolImpl serverProtocol;
+    private SequenceBuffer<Operation> operations;
+    private SequenceBuffer<Authenticator> authenticators;
+    private SequenceBuffer<String> hashChain;
+    private SequenceBuffer<String> hashChain_BBB;
+    private SequenceBuffer<Status> status;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        KVSOperationProcessor operationProcessor = new KVSCompatibleOperationProcessor(cryptoUtils);
+
+        ClientIdentifier clientIdentifier_AAA = ClientIdentifier.builder()
+                .setClientId("TestClientAAA")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientIdentifier clientIdentifier_BBB = ClientIdentifier.builder()
+                .setClientId("TestClientBBB")
+                .setPrivateKey(cryptoUtils.generateKeyPair().getPrivate())
+                .build();
+        ClientLookupMap clientLookupMap = new ClientLookupMap();
+        clientLookupMap.put(clientIdentifier_AAA.getClientId(), clientIdentifier_AAA);
+        clientLookupMap.put(clientIdentifier_BBB.getClientId(), clientIdentifier_BBB);
+
+        hashChain = new SequenceBuffer<>();
+        status = new SequenceBuffer<>();
+        clientProtocol_AAA = new ClientProtocolImpl(hashChain, status, new AtomicLong(0), clientLookupMap, clientIdentifier_AAA, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+        hashChain_BBB = new SequenceBuffer<>();
+        clientProtocol_BBB = new ClientProtocolImpl(hashChain_BBB, new SequenceBuffer<>(), new AtomicLong(0), clientLookupMap, clientIdentifier_BBB, cryptoUtils, operationProcessor, ForkJoinPool.commonPool(), PARALLEL_VERIFICATION_THRESHOLD);
+
+        operations = new SequenceBuffer<>();
+        authenticators = new SequenceBuffer<>();
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                operationProcessor, operations, authenticators, MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, UPDATE_AUTH_MAX_OPERATIONS);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+    }
+
+    @Test
+    public void testAcknowledgedHistoryIsTruncated() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+        assertEquals(operations.size(), 1);
+        assertEquals(authenticators.size(), 1);
+    }
+
+    @Test
+    public void testClientHistoryIsCompacted() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+        assertEquals(hashChain.size(), 2);
+        assertEquals(status.size(), 1);
+
+        execute(clientProtocol_BBB, put("key"));
+        execute(clientProtocol_AAA, put("key"));
+        assertEquals(hashChain.size(), 2);
+    }
+
+    @Test
+    public void testStaleClientResumesFromCheckpoint() throws Exception {
+        execute(clientProtocol_BBB, put("key"));
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+        assertTrue(operations.size() <= MAX_HISTORY + 1, "Retained operations " + operations.size());
+
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(put("key")));
+        assertTrue(!reply.getCheckpointHash().isEmpty());
+        serverProtocol.handleCommit(clientProtocol_BBB.handleReply(reply).getCommit());
+        serverProtocol.handleCommitAuth(clientProtocol_BBB.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+        execute(clientProtocol_AAA, put("key"));
+    }
+
+    @Test
+    public void testForgedCheckpointIsRejected() throws Exception {
+        execute(clientProtocol_BBB, put("key"));
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(put("key")));
+        String forged = cryptoUtils.hash(ImmutableList.of(reply.getCheckpointHash()));
+        try {
+            clientProtocol_BBB.handleReply(Messages.Reply.newBuilder()
+                    .mergeFrom(reply)
+                    .setCheckpointHash(forged)
+                    .build());
+            fail("Forged checkpoint was accepted");
+        } catch (IntegrityException e) {
+            // the forged value must not be adopted
+            assertFalse(hashChain_BBB.containsValue(forged));
+        }
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testCheckpointConflictingWithKnownHash() throws Exception {
+        execute(clientProtocol_BBB, put("key"));
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+
+        // the client has seen another operation at the checkpoint before, e.g., as pending operation
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(put("key")));
+        hashChain_BBB.put(reply.getDeltaOperations(0).getSequenceNumber() - 1, cryptoUtils.hash(ImmutableList.of("other")));
+        clientProtocol_BBB.handleReply(reply);
+    }
+
+    @Test(expectedExceptions = IntegrityException.class)
+    public void testCheckpointSkippingOwnOperation() throws Exception {
+        // the coalesced UpdateAuth goes to the other client, the own operation never becomes part of the view
+        serverProtocol = new ServerProtocolImpl(new AtomicLong(0), new AtomicLong(0), new KVSState(Maps.newTreeMap()),
+                new KVSCompatibleOperationProcessor(cryptoUtils), new SequenceBuffer<>(), new SequenceBuffer<>(),
+                MAX_PENDING_LIST, cryptoUtils, MAX_HISTORY, 2);
+        serverProtocol.handleInit(clientProtocol_AAA.invokeInit());
+        Messages.Reply own = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(put("key")));
+        Messages.Reply other = serverProtocol.handleInvoke(clientProtocol_AAA.invokeOperation(put("other")));
+        serverProtocol.handleCommit(clientProtocol_BBB.handleReply(own).getCommit());
+        serverProtocol.handleCommit(clientProtocol_AAA.handleReply(other).getCommit());
+        serverProtocol.handleCommitAuth(clientProtocol_AAA.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+        for (int i = 0; i < 20; i++) {
+            execute(clientProtocol_AAA, put("key" + i));
+        }
+
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol_BBB.invokeOperation(put("key")));
+        assertTrue(!reply.getCheckpointHash().isEmpty());
+        clientProtocol_BBB.handleReply(reply);
+    }
+
+    private void execute(ClientProtocolImpl clientProtocol, Operation operation) throws Exception {
+        Messages.Reply reply = serverProtocol.handleInvoke(clientProtocol.invokeOperation(operation));
+        serverProtocol.handleCommit(clientProtocol.handleReply(reply).getCommit());
+        serverProtocol.handleCommitAuth(clientProtocol.handleUpdateAuth(serverProtocol.uponNextCommittedOperationAvailable()));
+    }
+
+    private static Operation put(String key) {
+        return Operation.newBuilder().setOpCode(PUT).setKey(key).setValue("value").build();
+    }
+}
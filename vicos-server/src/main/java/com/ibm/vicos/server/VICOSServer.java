@@ -16,9 +16,11 @@
 
 package com.ibm.vicos.server;
 
-import com.google.common.collect.Maps;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashFunction;
 import com.google.inject.Binder;
 import com.google.inject.Guice;
+import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Names;
@@ -27,45 +29,103 @@ import com.google.inject.util.Modules;
 import com.ibm.vicos.common.ADS.Authenticator;
 import com.ibm.vicos.common.ActorSystemInstance;
 import com.ibm.vicos.common.Operations.Operation;
+import com.ibm.vicos.common.SequenceBuffer;
 import com.ibm.vicos.config.DefaultServerModule;
 import com.ibm.vicos.config.GuiceInjector;
+import com.ibm.vicos.kvs.HeapValueStore;
+import com.ibm.vicos.kvs.KVSDigest;
 import com.ibm.vicos.kvs.KVSState;
+import com.ibm.vicos.kvs.MappedValueStore;
+import com.ibm.vicos.kvs.ValueStore;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 
+import static com.google.common.base.Preconditions.checkState;
+import static com.ibm.vicos.config.ConfigHelper.returnDigestImplClazz;
+import static com.ibm.vicos.config.ConfigHelper.returnHashFunction;
+
 @Service
 public class VICOSServer {
 
     private static final long ACTOR_SHUTDOWN_TIMEOUT = 30000;
-    private KVSState state;
-    private AtomicLong invokedSequenceNumber;
-    private AtomicLong executedSequenceNumber;
-    private NavigableMap<Long, Operation> operations;
-    private NavigableMap<Long, Authenticator> authenticators;
-    private ActorRef serverActorRef;
+    // per shard protocol state
+    private final List<KVSState> states = Lists.newArrayList();
+    private final List<AtomicLong> invokedSequenceNumbers = Lists.newArrayList();
+    private final List<AtomicLong> executedSequenceNumbers = Lists.newArrayList();
+    private final List<SequenceBuffer<Operation>> operations = Lists.newArrayList();
+    private final List<SequenceBuffer<Authenticator>> authenticators = Lists.newArrayList();
+    private final List<ActorRef> serverActorRefs = Lists.newArrayList();
     private ActorSystem system;
 
     protected void startUp() {
+        final Config config = ConfigFactory.load();
+        system = ActorSystemInstance.getInstance(config);
 
-        invokedSequenceNumber = new AtomicLong(-1);
-        executedSequenceNumber = new AtomicLong(-1);
-        operations = Maps.newTreeMap();
-        authenticators = Maps.newTreeMap();
-        state = new KVSState(Maps.newTreeMap());
+        final String serverName = config.getString("vicos.server.name");
+        final int shards = config.getInt("vicos.system.sharding.shards");
+        checkState(shards > 0, "At least one shard is required");
 
-        final Config config = ConfigFactory.load();
+        if (shards == 1) {
+            serverActorRefs.add(startShard(config, "", serverName));
+        } else {
+            List<ActorRef> shardActors = Lists.newArrayList();
+            for (int shard = 0; shard < shards; shard++) {
+                shardActors.add(startShard(config, "/shard-" + shard, serverName + "-shard-" + shard));
+            }
+            serverActorRefs.addAll(shardActors);
+            serverActorRefs.add(system.actorOf(Props.create(GuiceInjector.class,
+                    Guice.createInjector(binder -> binder.bind(new TypeLiteral<List<ActorRef>>() {
+                    })
+                            .annotatedWith(Names.named("shardActors"))
+                            .toInstance(shardActors)),
+                    RouterActor.class), serverName));
+        }
+    }
+
+    /**
+     * Starts the protocol instance of a shard, each shard has its own sequence space, state and journal.
+     *
+     * @param directorySuffix appended to the journal and state directories
+     */
+    private ActorRef startShard(final Config config, final String directorySuffix, final String actorName) {
+        final AtomicLong invokedSequenceNumber = new AtomicLong(-1);
+        final AtomicLong executedSequenceNumber = new AtomicLong(-1);
+        final SequenceBuffer<Operation> operations = new SequenceBuffer<>();
+        final SequenceBuffer<Authenticator> authenticators = new SequenceBuffer<>();
 
         int pendingListMaxLength = config.getInt("vicos.system.flowcontrol.pending-list-max-length");
+        int historyMaxLength = config.getInt("vicos.server.history-max-length");
+        int updateAuthMaxOperations = config.getInt("vicos.server.update-auth-max-operations");
+        Class<? extends KVSDigest> digestClass = returnDigestImplClazz(config.getString("vicos.system.hashing.authenticator"));
+        HashFunction hashFunction = returnHashFunction(config.getString("vicos.system.hashing.algorithm"));
+        int treeSeed = config.getInt("vicos.system.hashing.tree-seed");
+
+        final ServerJournal journal;
+        if (config.getBoolean("vicos.server.journal.enabled")) {
+            journal = new FileServerJournal(config.getString("vicos.server.journal.directory") + directorySuffix,
+                    config.getInt("vicos.server.journal.group-commit-size"),
+                    config.getInt("vicos.server.journal.snapshot-interval"));
+        } else {
+            journal = new NoopServerJournal();
+        }
+
+        final ValueStore valueStore;
+        if (config.getString("vicos.server.state.backend").equalsIgnoreCase("MAPPED")) {
+            valueStore = new MappedValueStore(config.getString("vicos.server.state.directory") + directorySuffix,
+                    config.getInt("vicos.server.state.segment-size"));
+        } else {
+            valueStore = new HeapValueStore();
+        }
 
         final Module overrides = Modules.override(new DefaultServerModule()).with(new Module() {
             @Override
@@ -78,54 +138,94 @@ public class VICOSServer {
                         .annotatedWith(Names.named("lastAppliedSeqNo"))
                         .toInstance(executedSequenceNumber);
 
-                binder.bind(com.ibm.vicos.common.State.class)
-                        .annotatedWith(Names.named(""))
-                        .toInstance(state);
+                binder.bind(ValueStore.class).toInstance(valueStore);
 
-                binder.bind(new TypeLiteral<NavigableMap<Long, Authenticator>>() {
+                binder.bind(new TypeLiteral<SequenceBuffer<Authenticator>>() {
                 })
                         .toInstance(authenticators);
 
-                binder.bind(new TypeLiteral<NavigableMap<Long, Operation>>() {
+                binder.bind(new TypeLiteral<SequenceBuffer<Operation>>() {
                 })
                         .toInstance(operations);
                 binder.bind(Integer.class)
                         .annotatedWith(Names.named("pendingListMaxLength"))
                         .toInstance(pendingListMaxLength);
+                binder.bind(Integer.class)
+                        .annotatedWith(Names.named("historyMaxLength"))
+                        .toInstance(historyMaxLength);
+                binder.bind(Integer.class)
+                        .annotatedWith(Names.named("updateAuthMaxOperations"))
+                        .toInstance(updateAuthMaxOperations);
+
+                binder.bind(KVSDigest.class).to(digestClass);
+                binder.bind(HashFunction.class)
+                        .annotatedWith(Names.named("hashFunction"))
+                        .toInstance(hashFunction);
+                binder.bind(Integer.class)
+                        .annotatedWith(Names.named("treeSeed"))
+                        .toInstance(treeSeed);
+
+                binder.bind(ServerJournal.class).toInstance(journal);
             }
         });
 
-        system = ActorSystemInstance.getInstance(config);
+        final Injector injector = Guice.createInjector(overrides);
+        states.add((KVSState) injector.getInstance(com.ibm.vicos.common.State.class));
+        invokedSequenceNumbers.add(invokedSequenceNumber);
+        executedSequenceNumbers.add(executedSequenceNumber);
+        this.operations.add(operations);
+        this.authenticators.add(authenticators);
 
-        serverActorRef = system.actorOf(
-                Props.create(GuiceInjector.class, Guice.createInjector(overrides), ServerActor.class),
-                config.getString("vicos.server.name")
+        return system.actorOf(
+                Props.create(GuiceInjector.class, injector, ServerActor.class),
+                actorName
         );
     }
 
     protected void shutDown() {
-        system.stop(serverActorRef);
+        serverActorRefs.forEach(system::stop);
         long startTime = System.currentTimeMillis();
         long timeoutInMillis = ACTOR_SHUTDOWN_TIMEOUT;
-        while ((System.currentTimeMillis() < startTime + timeoutInMillis) && !serverActorRef.isTerminated()) {
+        while ((System.currentTimeMillis() < startTime + timeoutInMillis)
+                && !serverActorRefs.stream().allMatch(ActorRef::isTerminated)) {
         }
-        serverActorRef = null;
+        serverActorRefs.clear();
         system.shutdown();
     }
 
     public String getStatus() {
-        return "b: " + executedSequenceNumber.get() + " t: " + invokedSequenceNumber.get();
+        StringBuilder status = new StringBuilder();
+        for (int shard = 0; shard < executedSequenceNumbers.size(); shard++) {
+            if (shard > 0) {
+                status.append(System.lineSeparator());
+            }
+            if (executedSequenceNumbers.size() > 1) {
+                status.append("shard ").append(shard).append(": ");
+            }
+            status.append("b: ").append(executedSequenceNumbers.get(shard).get())
+                    .append(" t: ").append(invokedSequenceNumbers.get(shard).get());
+        }
+        return status.toString();
     }
 
+    /**
+     * @return operations of the first shard
+     */
     public Map<Long, Operation> getOperations() {
-        return operations;
+        return operations.get(0);
     }
 
+    /**
+     * @return authenticators of the first shard
+     */
     public Map<Long, Authenticator> getAuthenticator() {
-        return authenticators;
+        return authenticators.get(0);
     }
 
+    /**
+     * @return state of the first shard
+     */
     public KVSState getState() {
-        return state;
+        return states.get(0);
     }
 }